@@ -0,0 +1,50 @@
+package com.kuoster.gifanimationdrawable;
+
+import android.graphics.Bitmap;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Writes the frames of GifDecoder2 into a mutable bitmap of the frame size, of the config matching the pixel format.
+ */
+final class BitmapFrameSink implements GifFrameSink {
+    /** Makes a sink over a bitmap from GifBitmapPool for every frame */
+    static final Factory FACTORY = new Factory() {
+        @Override
+        public GifFrameSink create(int width, int height, PixelFormat format) {
+            return new BitmapFrameSink(GifBitmapPool.obtainBitmap(width, height, configOf(format)));
+        }
+    };
+
+    final Bitmap bitmap;
+
+    BitmapFrameSink(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    static Bitmap.Config configOf(PixelFormat format) {
+        return format == PixelFormat.RGB_565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+    }
+
+    static PixelFormat formatOf(Bitmap.Config config) {
+        return config == Bitmap.Config.RGB_565 ? PixelFormat.RGB_565 : PixelFormat.ARGB_8888;
+    }
+
+    /**
+     * @return Bitmap of a frame loaded with FACTORY, or null if frames are kept as color indices
+     */
+    static Bitmap getFrame(GifDecoder2 dec, int index) {
+        final GifFrameSink sink = dec.getFrameSink(index);
+        return (sink instanceof BitmapFrameSink) ? ((BitmapFrameSink)sink).bitmap : null;
+    }
+
+    @Override
+    public void setPixels(int[] argb, int offset, int stride, int x, int y, int width, int height) {
+        bitmap.setPixels(argb, offset, stride, x, y, width, height);
+    }
+
+    @Override
+    public void setPixels565(short[] rgb565, int width, int height) {
+        bitmap.copyPixelsFromBuffer(ShortBuffer.wrap(rgb565, 0, width * height));
+    }
+}
@@ -0,0 +1,104 @@
+package com.kuoster.gifanimationdrawable;
+
+/**
+ * Times the frames of an animation on the uptime clock.
+ * Each frame is due at a fixed time from the start of playback rather than from when the frame before it was shown,
+ * so a frame shown late doesn't push back every frame after it, frames whose time has passed are skipped instead.
+ * Frames are numbered across loops, frame n shows the image n % getFrameCount().
+ */
+class FrameClock {
+    /** Delays up to this are played as DEFAULT_DELAY_MS, as browsers do, most such gifs were made to be shown there */
+    static final int MAX_CLAMPED_DELAY_MS = 10;
+    static final int DEFAULT_DELAY_MS = 100;
+
+    private final int[] mStartTimesMS;// Of each frame in a loop
+    private final int mLoopDurationMS;
+    private final long mFrameEnd;// Frame after the last one played, Long.MAX_VALUE when looping forever
+    private long mStartTime;// Uptime at which frame 0 is due
+
+    /**
+     * @param delaysMS Delay of each frame as found in the gif, at least one frame
+     * @param loopCount Times the animation repeats after being played once, GifInfo.LOOP_FOREVER or GifInfo.NO_LOOP
+     */
+    FrameClock(int[] delaysMS, int loopCount) {
+        mStartTimesMS = new int[delaysMS.length];
+        int time = 0;
+        for(int i = 0; i < delaysMS.length; ++i) {
+            mStartTimesMS[i] = time;
+            time += clampDelay(delaysMS[i]);
+        }
+        mLoopDurationMS = time;
+
+        final int frameCount = delaysMS.length;
+        if(frameCount <= 1) {
+            mFrameEnd = frameCount;// Nothing to animate, don't wake up for a single frame
+        }
+        else if(loopCount == GifDecoder2.GifInfo.LOOP_FOREVER) {
+            mFrameEnd = Long.MAX_VALUE;
+        }
+        else if(loopCount == GifDecoder2.GifInfo.NO_LOOP) {
+            mFrameEnd = frameCount;
+        }
+        else {
+            mFrameEnd = (long)frameCount * (loopCount + 1);
+        }
+    }
+
+    static int clampDelay(int delayMS) {
+        return delayMS <= MAX_CLAMPED_DELAY_MS ? DEFAULT_DELAY_MS : delayMS;
+    }
+
+    int getFrameCount() {
+        return mStartTimesMS.length;
+    }
+
+    /**
+     * Time the frames so that a frame is due now. Frames before it are not played again.
+     */
+    void startAt(long frame, long now) {
+        mStartTime = now - (frame / mStartTimesMS.length) * mLoopDurationMS - mStartTimesMS[(int)(frame % mStartTimesMS.length)];
+    }
+
+    /**
+     * @return Uptime at which a frame is due
+     */
+    long timeOf(long frame) {
+        return mStartTime + (frame / mStartTimesMS.length) * mLoopDurationMS + mStartTimesMS[(int)(frame % mStartTimesMS.length)];
+    }
+
+    /**
+     * @return The last frame due at now, or the last frame played if the animation is over
+     */
+    long frameAt(long now) {
+        final long elapsed = Math.max(0, now - mStartTime);
+        final long loop = elapsed / mLoopDurationMS;
+        final int time = (int)(elapsed % mLoopDurationMS);
+        // Last frame of the loop starting at or before time
+        int low = 0;
+        int high = mStartTimesMS.length - 1;
+        while(low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if(mStartTimesMS[mid] <= time) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return Math.min(loop * mStartTimesMS.length + low, mFrameEnd - 1);
+    }
+
+    /**
+     * @return False if frame is the last one played
+     */
+    boolean hasFrameAfter(long frame) {
+        return frame + 1 < mFrameEnd;
+    }
+
+    /**
+     * @return Image shown by a frame
+     */
+    int indexOf(long frame) {
+        return (int)(frame % mStartTimesMS.length);
+    }
+}
@@ -1,21 +1,32 @@
 package com.kuoster.gifanimationdrawable;
 
+import android.annotation.TargetApi;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.drawable.AnimationDrawable;
 import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 public class GifAnimationDrawable extends AnimationDrawable {
     private static final String TAG = GifAnimationDrawable.class.getSimpleName();
 
-    private enum DecodeStatus {
+    public enum DecodeStatus {
         DECODE_STATUS_UNDECODED,
         DECODE_STATUS_DECODING,
         DECODE_STATUS_DECODED
@@ -26,9 +37,105 @@ public class GifAnimationDrawable extends AnimationDrawable {
     private Resources mRes;
     private int mWidth = 0;
     private int mHeight = 0;
+    private GifDecoder2.GifInfo mInfo = new GifDecoder2.GifInfo();
+    private boolean mProbed;// mInfo, mFrameIndex and mConfig are from the whole gif, not only its header, see probe()
+    private GifByteSource mSource;// Whole gif data, read once by probe() and shared by the decoders. Not read if the frames are in GifCache
+    private String mCacheKey;// Key of the frames in GifCache
 
     private DecodeStatus mDecodeStatus;
 
+    /**
+     * Called on the main thread when decoding has finished and DecodeStatus is DECODE_STATUS_DECODED.
+     */
+    public interface OnDecodeCompleteListener {
+        void onDecodeComplete(GifAnimationDrawable drawable);
+    }
+
+    /** Decoding runs on a pool shared by all drawables, so many gifs on screen don't start many threads */
+    private static final int MAX_DECODE_THREADS = 2;
+    private static ExecutorService sDecodeExecutor;
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static final int FEED_BUFFER_SIZE = 16 * 1024;
+    private static volatile GifMetricsListener sMetricsListener;
+
+    private OnDecodeCompleteListener mOnDecodeCompleteListener;
+    private Drawable mPlaceholder;// Shown until the first frame is decoded
+    private Bitmap mFirstFrame;// Shown until all frames are decoded
+
+    /**
+     * Options controlling how frames are decoded and kept.
+     */
+    public static class Options {
+        /**
+         * Decode frames on demand while playing instead of decoding all of them up front.
+         * Only the current and the next frame are kept, so memory use doesn't depend on the
+         * frame count. The gif is decoded again for every loop.
+         */
+        public boolean inStreaming = false;
+
+        /**
+         * Keep decoded frames as 8-bit color indices of the area each frame changes, instead of a
+         * full bitmap per frame. Frames are expanded to colors into a single bitmap as they are
+         * shown, which takes much less memory for gifs with many frames.
+         * Ignored with inStreaming.
+         */
+        public boolean inIndexedFrames = false;
+
+        /**
+         * Decode frames smaller than the gif, like BitmapFactory.Options.inSampleSize.
+         * With 2, frames are half the width and height of the gif and take a quarter of the memory.
+         * The intrinsic size of the drawable is the size of the frames.
+         */
+        public int inSampleSize = 1;
+
+        /**
+         * Config of the frame bitmaps. RGB_565 takes half the memory of ARGB_8888 and is used
+         * if the gif has no transparent pixels, see GifDecoder2.GifInfo.opaque, ARGB_8888 otherwise.
+         */
+        public Bitmap.Config inPreferredConfig = Bitmap.Config.ARGB_8888;
+    }
+
+    // Streaming playback, see Options.inStreaming
+    private boolean mStreaming;
+    private int mSampleSize = 1;
+    private Bitmap.Config mPreferredConfig = Bitmap.Config.ARGB_8888;
+    private Bitmap.Config mConfig = Bitmap.Config.ARGB_8888;// Config of the frames, decided when probing
+    private GifDecoder2 mStreamDecoder;
+    private GifFrameIndex mFrameIndex;// Found when probing, times and seeks the streamed frames
+    private Bitmap mNextFrame;// Frame decoded ahead while mCurrentFrame is shown
+    private long mNextFrameNumber;// Frame in mNextFrame, see FrameClock
+    private boolean mHasNextFrame;
+    private boolean mDecodingAhead;// mNextFrame and mStreamDecoder are owned by the decode thread
+    private boolean mFrameDue;// Next frame was due while it was still being decoded
+
+    // Playback while the gif is downloaded, see GifAnimationDrawable(InputStream). Frames are shown as they arrive, in order
+    private InputStream mStream;// Read once by feedStream()
+    private boolean mFeeding;// Frames are still arriving
+    private volatile boolean mFeedCancelled;// Set by release(), stops reading the stream
+    private final ArrayList<Bitmap> mFedFrames = new ArrayList<Bitmap>();
+    private final ArrayList<Integer> mFedDelaysMS = new ArrayList<Integer>();
+
+    // Indexed frame playback, see Options.inIndexedFrames
+    private boolean mIndexedFrames;
+    private IndexedFramePlayer mPlayer;
+
+    // Playback, the same for every mode. Frames are timed by mFrameClock and advanced by GifTicker instead of AnimationDrawable
+    private FrameClock mFrameClock;// Made once the frame delays are known
+    private Bitmap mCurrentFrame;// Frame being shown
+    private long mFrameNumber;// Frame in mCurrentFrame, see FrameClock
+    private boolean mRunning;
+    private final GifTicker.Client mTickClient = new GifTicker.Client() {
+        @Override
+        public long onTick(long now) {
+            return tick(now);
+        }
+    };
+
+    private GifCache.FrameSet mFrameSet;// Frames from GifCache, acquired until release()
+    private BitmapDrawable[] mFrameDrawables;// Frames decoded up front as bitmaps, see getFrame()
+    private boolean mReleased;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
     public GifAnimationDrawable() {
         super();
         this.mFilePath = null;
@@ -36,58 +143,687 @@ public class GifAnimationDrawable extends AnimationDrawable {
         mDecodeStatus = DecodeStatus.DECODE_STATUS_UNDECODED;
     }
 
+    /**
+     * Load a gif resource. Only the header is read here, for the intrinsic size.
+     * The resource is read and scanned on the decode executor when the drawable is first drawn.
+     */
     public GifAnimationDrawable(Resources res, int resId) {
         this.setGif(res, resId);
     }
 
+    public GifAnimationDrawable(Resources res, int resId, Options opts) {
+        setOptions(opts);
+        this.setGif(res, resId);
+    }
+
+    /**
+     * Load a gif file. The file is memory-mapped, so it isn't copied onto the heap
+     * and looping playback reads it again without I/O.
+     * Only the header is read here, for the intrinsic size. The file is mapped and scanned on the decode executor
+     * when the drawable is first drawn.
+     */
     public GifAnimationDrawable(String filepath) {
-        this.mFilePath = filepath;
-        this.mResId = 0;
-        //TODO implementation
-        throw new UnsupportedOperationException("Method not implemented.");
+        this.setGif(filepath);
+    }
+
+    public GifAnimationDrawable(String filepath, Options opts) {
+        setOptions(opts);
+        this.setGif(filepath);
     }
 
+    /**
+     * Play a gif while it is being downloaded. Frames are decoded as the data arrives, see GifDecoder2.feed(),
+     * and playback starts with the first frame instead of once the whole gif is in.
+     * Frames are shown in order as they arrive, then the gif loops as usual once the stream has ended.
+     * The stream is read on the decode executor and closed when done.
+     */
+    public GifAnimationDrawable(InputStream is) {
+        this.setGif(is);
+    }
+
+    /**
+     * See GifAnimationDrawable(InputStream). inStreaming and inIndexedFrames don't apply, and frames are always
+     * ARGB_8888 since transparency isn't known before the whole gif is read. The frames aren't put in GifCache.
+     */
+    public GifAnimationDrawable(InputStream is, Options opts) {
+        setOptions(opts);
+        this.setGif(is);
+    }
+
+    private void setOptions(Options opts) {
+        if(opts != null) {
+            this.mStreaming = opts.inStreaming;
+            this.mIndexedFrames = opts.inIndexedFrames && !opts.inStreaming;
+            this.mSampleSize = Math.max(1, opts.inSampleSize);
+            if(opts.inPreferredConfig != null) {
+                this.mPreferredConfig = opts.inPreferredConfig;
+            }
+        }
+    }
 
     private void setGif(Resources res, int resId) {
         this.mFilePath = null;
         this.mResId = resId;
         this.mRes = res;
         this.mDecodeStatus = DecodeStatus.DECODE_STATUS_UNDECODED;
-        final Bitmap bm = BitmapFactory.decodeResource(res, resId);
-        mWidth = bm.getWidth();
-        mHeight = bm.getHeight();
+        this.mCacheKey = GifCache.resourceKey(res, resId, mSampleSize, mPreferredConfig, mIndexedFrames);
+        probeSize();
+    }
+
+    private void setGif(String filepath) {
+        this.mFilePath = filepath;
+        this.mResId = 0;
+        this.mRes = null;
+        this.mDecodeStatus = DecodeStatus.DECODE_STATUS_UNDECODED;
+        this.mCacheKey = GifCache.fileKey(filepath, new File(filepath).lastModified(), mSampleSize, mPreferredConfig, mIndexedFrames);
+        probeSize();
+    }
+
+    private void setGif(InputStream is) {
+        this.mFilePath = null;
+        this.mResId = 0;
+        this.mRes = null;
+        this.mStream = is;
+        this.mStreaming = false;
+        this.mIndexedFrames = false;
+        this.mDecodeStatus = DecodeStatus.DECODE_STATUS_UNDECODED;
+        this.mInfo = new GifDecoder2.GifInfo();// Known once the stream has been read, the size once the first frame is in
+    }
+
+    /**
+     * Find the intrinsic size without reading the whole gif, so that making the drawable on the UI thread stays cheap.
+     * Only the 13 bytes of the header are read, see GifDecoder2.probeSize(). The rest is found by probe() once the gif is drawn.
+     */
+    private void probeSize() {
+        final GifCache.FrameSet cached = mStreaming ? null : GifCache.getInstance().get(mCacheKey);
+        if(cached != null) {// Decoded before, the gif doesn't have to be read
+            mInfo = cached.info;
+            mProbed = true;
+        }
+        else {
+            try {
+                final InputStream is = openGif(mRes, mResId, mFilePath);
+                if(is != null) {
+                    mInfo = GifDecoder2.probeSize(is);
+                }
+            }
+            catch (IOException e) {
+                Log.e(TAG, "probeSize() failed", e);
+            }
+        }
+        onProbed();
+    }
+
+    /**
+     * Read the whole gif and scan it on the decode executor, then run then on the main thread.
+     * Only the header and block sizes are read, no pixels are decoded. The data is kept in mSource for decoding.
+     * @param then Run right away if the gif has been probed before, not run if the drawable is released meanwhile
+     */
+    private void probe(final Runnable then) {
+        if(mProbed) {
+            then.run();
+            return;
+        }
+        final Resources res = mRes;
+        final int resId = mResId;
+        final String filePath = mFilePath;
+        getDecodeExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                GifByteSource source = null;
+                GifFrameIndex index = null;
+                try {
+                    source = readSource(res, resId, filePath);
+                    index = (source != null) ? GifDecoder2.scan(source.duplicate()) : null;
+                }
+                catch (RuntimeException e) {
+                    Log.e(TAG, "probe() failed", e);
+                }
+                final GifByteSource src = source;
+                final GifFrameIndex frameIndex = index;
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(mReleased) {
+                            return;
+                        }
+                        mSource = src;
+                        mFrameIndex = frameIndex;
+                        if(frameIndex != null) {
+                            mInfo = frameIndex.info;
+                        }
+                        mProbed = true;
+                        onProbed();
+                        then.run();
+                    }
+                });
+            }
+        });
+    }
+
+    private void onProbed() {
+        mWidth = GifDecoder2.sampledSize(mInfo.width, mSampleSize);
+        mHeight = GifDecoder2.sampledSize(mInfo.height, mSampleSize);
+        mConfig = (mPreferredConfig == Bitmap.Config.RGB_565 && mInfo.opaque) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
         //Log.d(TAG, String.format("Image size (%d, %d)", mWidth, mHeight));
     }
 
+    static synchronized ExecutorService getDecodeExecutor() {
+        if(sDecodeExecutor == null) {
+            final int threads = Math.max(1, Math.min(MAX_DECODE_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+            sDecodeExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int mThreadCount = 0;
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "GifDecoder-" + (++mThreadCount));
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+        }
+        return sDecodeExecutor;
+    }
+
+    /**
+     * Report decoding and playback numbers of all drawables to a listener, see GifMetricsListener.
+     * Decoders started before the call keep reporting to the listener they started with.
+     * @param listener The listener, or null to stop measuring
+     */
+    public static void setMetricsListener(GifMetricsListener listener) {
+        sMetricsListener = listener;
+    }
+
+    /**
+     * @return The listener given to setMetricsListener(), or null
+     */
+    static GifMetricsListener getMetricsListener() {
+        return sMetricsListener;
+    }
+
+    /**
+     * Take all frames from the cache, or decode them on the decode executor and add them on the main thread when done.
+     */
     private void decode() {
         this.mDecodeStatus = DecodeStatus.DECODE_STATUS_DECODING;
 
-        GifDecoder2 dec = new GifDecoder2();
-        dec.load(getInputStream());
-        final int frameCnt = dec.getFrameCount();
+        if(mCacheKey == null) {
+            Log.e(TAG, "decode() no gif");
+            this.mDecodeStatus = DecodeStatus.DECODE_STATUS_DECODED;
+            return;
+        }
+        final GifCache cache = GifCache.getInstance();
+        final GifCache.FrameSet cached = cache.get(mCacheKey);
+        final GifMetricsListener metrics = sMetricsListener;
+        if(metrics != null) {
+            metrics.onCacheLookup(mCacheKey, cached != null);
+        }
+        if(cached != null) {
+            onDecoded(cached);
+            return;
+        }
+        probe(new Runnable() {
+            @Override
+            public void run() {
+                loadFrames();
+            }
+        });
+    }
+
+    /**
+     * Decode all frames through GifCache once the gif has been probed.
+     */
+    private void loadFrames() {
+        final GifCache cache = GifCache.getInstance();
+        final GifCache.FrameSet cached = cache.get(mCacheKey);
+        if(cached != null) {// Loaded by another drawable while this one was probing
+            onDecoded(cached);
+            return;
+        }
+        cache.load(mCacheKey, getSource(), mInfo, mSampleSize, mConfig, mIndexedFrames, new GifCache.Callback() {
+            @Override
+            public void onFirstFrame(Bitmap first) {
+                mFirstFrame = first;
+                invalidateSelf();
+            }
+
+            @Override
+            public void onLoaded(GifCache.FrameSet frames) {
+                onDecoded(frames);
+            }
+        });
+    }
+
+    private void onDecoded(GifCache.FrameSet frames) {
+        if(mReleased) {
+            return;
+        }
+        mFrameSet = frames;
+        GifCache.getInstance().acquire(frames);
+        final int frameCnt = frames.getFrameCount();
         //Log.d(TAG, String.format("Frame count: %d", frameCnt));
-        for(int idx = 0; idx < frameCnt; ++idx) {
-            BitmapDrawable bd = new BitmapDrawable(mRes, dec.getFrame(idx));
-            //Log.d(TAG, "Add frame " + String.valueOf(idx));
-            addFrame(bd, dec.getDelayMS(idx));
+        if(frameCnt > 0) {
+            mFrameClock = new FrameClock(frames.delaysMS, frames.loopCount);
+            mFrameNumber = 0;
+        }
+        if(frames.images != null) {// Indexed frames, expanded by a player of our own
+            if(frameCnt > 0) {
+                mCurrentFrame = GifBitmapPool.obtainBitmap(mWidth, mHeight, mConfig);// Given back in release()
+                mPlayer = new IndexedFramePlayer(mWidth, mHeight, BitmapFrameSink.formatOf(mConfig), new BitmapFrameSink(mCurrentFrame), frames.images);
+                mPlayer.advance();
+            }
+        }
+        else {
+            // Returned by getFrame() instead of being added with addFrame(), which couldn't take them back in release()
+            mFrameDrawables = new BitmapDrawable[frameCnt];
+            for(int idx = 0; idx < frameCnt; ++idx) {
+                mFrameDrawables[idx] = new BitmapDrawable(mRes, frames.bitmaps[idx]);
+            }
+            setOneShot(frames.loopCount == GifDecoder2.GifInfo.NO_LOOP);
+            if(frameCnt > 0) {
+                mCurrentFrame = frames.bitmaps[0];
+            }
         }
-        setOneShot(!dec.isLooped());
-        //setOneShot(false);
 
+        mFirstFrame = null;
         this.mDecodeStatus = DecodeStatus.DECODE_STATUS_DECODED;
+        if(frameCnt > 0 && !isRunning()) {
+            Log.d(TAG, "auto start()");
+            start();
+        }
+        invalidateSelf();
+        notifyDecodeComplete();
     }
 
-    private InputStream getInputStream() {
-        if(this.mFilePath != null) {
-            try {
-                return new FileInputStream(mFilePath);
+    /**
+     * Read the stream on the decode executor, handing every frame to the main thread as soon as it is decoded.
+     */
+    private void feedStream() {
+        this.mDecodeStatus = DecodeStatus.DECODE_STATUS_DECODING;
+        this.mFeeding = true;
+        final InputStream is = mStream;
+        mStream = null;
+        final int sampleSize = mSampleSize;
+        getDecodeExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final GifDecoder2 dec = new GifDecoder2();
+                dec.setSampleSize(sampleSize);
+                dec.setFrameSinkFactory(BitmapFrameSink.FACTORY);
+                dec.setMetricsListener(sMetricsListener);
+                dec.setOnFrameDecodedListener(new GifDecoder2.OnFrameDecodedListener() {
+                    @Override
+                    public void onFrameDecoded(GifDecoder2 decoder, int index) {
+                        final Bitmap frame = BitmapFrameSink.getFrame(decoder, index);
+                        final int delayMS = decoder.getDelayMS(index);
+                        sMainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onFrameFed(frame, delayMS);
+                            }
+                        });
+                    }
+                });
+                final byte[] buffer = new byte[FEED_BUFFER_SIZE];
+                try {
+                    dec.beginFeed();
+                    int bytesRead;
+                    while(!mFeedCancelled && (bytesRead = is.read(buffer)) >= 0) {
+                        if(!dec.feed(buffer, 0, bytesRead)) {// Trailer read
+                            break;
+                        }
+                    }
+                }
+                catch (IOException e) {// Play what has arrived
+                    Log.e(TAG, "feedStream() read failed", e);
+                }
+                catch (RuntimeException e) {
+                    Log.e(TAG, "feedStream() failed", e);
+                }
+                finally {
+                    try {
+                        is.close();
+                    }
+                    catch (IOException e) {
+                        // Nothing more to read anyway
+                    }
+                }
+                dec.endFeed();
+                final GifCache.FrameSet frames = new GifCache.FrameSet(dec, dec.getInfo(), false, null);
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onFeedEnded(frames);
+                    }
+                });
             }
-            catch (FileNotFoundException e) {
-                // No file, no loading, no action, nothing.
+        });
+    }
+
+    /**
+     * Show the first frame as soon as it arrives and start playing, later frames are shown by tick() when due.
+     */
+    private void onFrameFed(Bitmap frame, int delayMS) {
+        if(mReleased) {// The frames are given back with the frame set in onFeedEnded()
+            return;
+        }
+        mFedFrames.add(frame);
+        mFedDelaysMS.add(delayMS);
+        if(mFedFrames.size() == 1) {
+            mWidth = frame.getWidth();
+            mHeight = frame.getHeight();
+            mCurrentFrame = frame;
+            mFrameNumber = 0;
+            invalidateSelf();
+            start();
+        }
+        else if(mFrameDue) {// Late, show it on the next tick
+            mFrameDue = false;
+            GifTicker.getInstance().schedule(mTickClient, SystemClock.uptimeMillis());
+        }
+    }
+
+    /**
+     * Play the whole gif as decoded up front, from the frame being shown.
+     */
+    private void onFeedEnded(GifCache.FrameSet frames) {
+        mFeeding = false;
+        mFedFrames.clear();
+        mFedDelaysMS.clear();
+        if(mReleased) {// Give the bitmaps to the pool, nothing else shows them
+            GifCache.getInstance().acquire(frames);
+            GifCache.getInstance().release(frames);
+            return;
+        }
+        mInfo = frames.info;
+        final long shown = mFrameNumber;
+        stop();
+        onDecoded(frames);
+        if(shown > 0 && shown < frames.getFrameCount()) {
+            stop();
+            showFrame(shown);
+            start();
+        }
+    }
+
+    /**
+     * Show the next frame that has arrived, or wait for it. Frames aren't skipped, the download sets the pace.
+     * @return Uptime of the next frame, or GifTicker.WAIT
+     */
+    private long tickFed(long now) {
+        final int next = (int)mFrameNumber + 1;
+        if(next >= mFedFrames.size()) {// Scheduled again by onFrameFed()
+            mFrameDue = true;
+            return GifTicker.WAIT;
+        }
+        mFrameNumber = next;
+        mCurrentFrame = mFedFrames.get(next);
+        invalidateSelf();
+        return now + FrameClock.clampDelay(mFedDelaysMS.get(next));
+    }
+
+    /**
+     * Open the gif for streaming and decode the first two frames on the decode executor.
+     */
+    private void openStream() {
+        this.mDecodeStatus = DecodeStatus.DECODE_STATUS_DECODING;
+        if(!mProbed) {// The frame index is needed first
+            probe(new Runnable() {
+                @Override
+                public void run() {
+                    openStream();
+                }
+            });
+            return;
+        }
+        if(mFrameIndex == null || mFrameIndex.getFrameCount() == 0) {
+            Log.e(TAG, "openStream() no frame");
+            this.mDecodeStatus = DecodeStatus.DECODE_STATUS_DECODED;
+            return;
+        }
+        mFrameClock = new FrameClock(mFrameIndex.getDelaysMS(), mInfo.loopCount);
+
+        final GifByteSource src = getSource();
+        final GifFrameIndex index = mFrameIndex;
+        final FrameClock clock = mFrameClock;
+        final int sampleSize = mSampleSize;
+        final Bitmap.Config config = mConfig;
+        getDecodeExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final GifDecoder2 dec = new GifDecoder2();
+                dec.setSampleSize(sampleSize);
+                dec.setPixelFormat(BitmapFrameSink.formatOf(config));
+                dec.setMetricsListener(sMetricsListener);
+                Bitmap current = null;
+                Bitmap next = null;
+                boolean decoded = false;
+                try {
+                    if(dec.open(src)) {
+                        dec.setFrameIndex(index);// Found when probing, not scanned again
+                        final int width = dec.getWidth();
+                        final int height = dec.getHeight();
+                        current = GifBitmapPool.obtainBitmap(width, height, config);
+                        next = GifBitmapPool.obtainBitmap(width, height, config);
+                        decoded = dec.decodeNextFrame(new BitmapFrameSink(current));
+                        if(!decoded) {
+                            Log.e(TAG, "openStream() no frame");
+                        }
+                    }
+                }
+                catch (RuntimeException e) {
+                    Log.e(TAG, "openStream() failed", e);
+                }
+                if(!decoded) {// Nothing to show, the bitmaps go back to the pool
+                    dec.close();
+                    GifBitmapPool.release(current);
+                    GifBitmapPool.release(next);
+                    current = null;
+                    next = null;
+                }
+                final boolean hasNext = decoded && clock.hasFrameAfter(0) && decodeAhead(dec, next, clock.indexOf(1));
+                final Bitmap currentFrame = current;
+                final Bitmap nextFrame = next;
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        releaseStream();// What the last play left, if start() opened the stream again
+                        mStreamDecoder = dec;
+                        mCurrentFrame = currentFrame;
+                        mNextFrame = nextFrame;
+                        if(mReleased) {
+                            releaseStream();
+                            return;
+                        }
+                        mFrameNumber = 0;
+                        mNextFrameNumber = 1;
+                        mHasNextFrame = hasNext;
+                        mDecodeStatus = DecodeStatus.DECODE_STATUS_DECODED;
+                        if(!isRunning()) {
+                            Log.d(TAG, "auto start()");
+                            start();
+                        }
+                        invalidateSelf();
+                        notifyDecodeComplete();
+                    }
+                });
             }
+        });
+    }
+
+    /**
+     * Decode a frame into next, going back to the first frames of a looped gif after the last one.
+     * Runs on the decode executor.
+     * @return False if the frame couldn't be decoded
+     */
+    private static boolean decodeAhead(GifDecoder2 dec, Bitmap next, int index) {
+        final boolean decoded = dec.seekTo(index, new BitmapFrameSink(next));// The next frame in sequence unless playback skips frames
+        if(!decoded) {
+            dec.close();
         }
-        if(this.mResId > 0) {
-            return mRes.openRawResource(mResId);
+        return decoded;
+    }
+
+    /**
+     * Show a frame of the frames decoded up front.
+     * With indexed frames, frames skipped are drawn on the canvas without being written into the bitmap.
+     */
+    private void showFrame(long frame) {
+        mFrameNumber = frame;
+        final int index = mFrameClock.indexOf(frame);
+        if(mPlayer != null) {
+            mPlayer.advanceTo(index);
+        }
+        else {
+            mCurrentFrame = mFrameSet.bitmaps[index];
+        }
+        invalidateSelf();
+    }
+
+    /**
+     * Show the streamed frame decoded ahead, and decode the one after it while it is shown.
+     * @param now Uptime of the frame, if playback is behind the frame due now is decoded instead of the next one
+     */
+    private void showNextStreamFrame(long now) {
+        final Bitmap shown = mCurrentFrame;
+        mCurrentFrame = mNextFrame;
+        mNextFrame = shown;
+        mFrameNumber = mNextFrameNumber;
+        invalidateSelf();
+
+        if(!mFrameClock.hasFrameAfter(mFrameNumber)) {// Played to the end
+            mHasNextFrame = false;
+            mStreamDecoder.close();
+            return;
+        }
+        final long nextFrame = Math.max(mFrameNumber + 1, mFrameClock.frameAt(now));
+        reportDropped(nextFrame - mFrameNumber - 1);
+        mDecodingAhead = true;
+        final GifDecoder2 dec = mStreamDecoder;
+        final Bitmap next = mNextFrame;
+        final int index = mFrameClock.indexOf(nextFrame);
+        getDecodeExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean hasNext = decodeAhead(dec, next, index);
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mDecodingAhead = false;
+                        if(mReleased) {// Held back while the decoder was running
+                            releaseStream();
+                            return;
+                        }
+                        mHasNextFrame = hasNext;
+                        mNextFrameNumber = nextFrame;
+                        if(mFrameDue) {// Show it on the next tick
+                            mFrameDue = false;
+                            GifTicker.getInstance().schedule(mTickClient, SystemClock.uptimeMillis());
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stop the animation and give the frame buffers back, to be used by other gifs.
+     * Bitmaps shared through GifCache are given back once no drawable shows them and they are out of the cache.
+     * The drawable draws nothing afterwards.
+     */
+    public void release() {
+        if(mReleased) {
+            return;
+        }
+        stop();
+        mReleased = true;
+        mFeedCancelled = true;
+        if(mFeeding) {// The frames go back with the frame set once the decoder is done
+            mCurrentFrame = null;
+        }
+        if(mPlayer != null) {
+            mPlayer.release();
+            mPlayer = null;
+            GifBitmapPool.release(mCurrentFrame);// The player's own bitmap
+            mCurrentFrame = null;
+        }
+        else if(mStreaming && !mDecodingAhead) {// Otherwise done when the decoder returns
+            releaseStream();
+        }
+        if(mFrameSet != null) {
+            mFrameDrawables = null;// Their bitmaps can go to other gifs from now on
+            GifCache.getInstance().release(mFrameSet);
+            mFrameSet = null;
+            mCurrentFrame = null;
+        }
+        mFirstFrame = null;
+        mSource = null;
+        // A hardware accelerated view keeps drawing its recorded display list, which still holds the pooled bitmaps
+        invalidateSelf();
+    }
+
+    private void releaseStream() {
+        if(mStreamDecoder != null) {
+            mStreamDecoder.close();
+            mStreamDecoder = null;
+        }
+        GifBitmapPool.release(mCurrentFrame);
+        GifBitmapPool.release(mNextFrame);
+        mCurrentFrame = null;
+        mNextFrame = null;
+    }
+
+    private void notifyDecodeComplete() {
+        if(mOnDecodeCompleteListener != null) {
+            mOnDecodeCompleteListener.onDecodeComplete(this);
+        }
+    }
+
+    /**
+     * @param listener Called on the main thread once decoding has finished
+     */
+    public void setOnDecodeCompleteListener(OnDecodeCompleteListener listener) {
+        this.mOnDecodeCompleteListener = listener;
+    }
+
+    /**
+     * @param placeholder Drawn until the first frame has been decoded
+     */
+    public void setPlaceholder(Drawable placeholder) {
+        this.mPlaceholder = placeholder;
+    }
+
+    /**
+     * @return A view of the gif data read by probe() with its own read position, or null if the gif can't be read
+     */
+    private GifByteSource getSource() {
+        return (mSource != null) ? mSource.duplicate() : null;
+    }
+
+    /**
+     * Read a gif resource or map a gif file whole. Runs on the decode executor.
+     * @return The data, or null if there is no gif or it can't be read
+     */
+    private static GifByteSource readSource(Resources res, int resId, String filePath) {
+        if(res != null) {
+            return GifDecoder2.readSource(res.openRawResource(resId));
+        }
+        if(filePath != null) {
+            return GifDecoder2.mapSource(new File(filePath));
+        }
+        return null;
+    }
+
+    /**
+     * @return A stream of a gif resource or file, or null if there is no gif
+     */
+    private static InputStream openGif(Resources res, int resId, String filePath) throws IOException {
+        if(res != null) {
+            return res.openRawResource(resId);
+        }
+        if(filePath != null) {
+            return new FileInputStream(filePath);
         }
         return null;
     }
@@ -95,16 +831,158 @@ public class GifAnimationDrawable extends AnimationDrawable {
     /** AnimationDrawable adapter */
     @Override
     public void draw(Canvas canvas) {
-        super.draw(canvas);
-
+        if(mReleased) {
+            return;
+        }
         if(mDecodeStatus == DecodeStatus.DECODE_STATUS_UNDECODED) {
-            Log.d(TAG, "draw(), decode()");
-            decode();
-            if(!isRunning()) {
-                Log.d(TAG, "auto start()");
+            if(mStream != null) {
+                Log.d(TAG, "draw(), feedStream()");
+                feedStream();
+            }
+            else if(mStreaming) {
+                Log.d(TAG, "draw(), openStream()");
+                openStream();
+            }
+            else {
+                Log.d(TAG, "draw(), decode()");
+                decode();
+            }
+        }
+
+        if(mDecodeStatus != DecodeStatus.DECODE_STATUS_DECODED && !(mFeeding && mCurrentFrame != null)) {
+            // Never wait for the decoder here, show what we have
+            if(mFirstFrame != null) {
+                canvas.drawBitmap(mFirstFrame, null, getBounds(), mPaint);
+            }
+            else if(mPlaceholder != null) {
+                mPlaceholder.setBounds(getBounds());
+                mPlaceholder.draw(canvas);
+            }
+            return;
+        }
+
+        if(mCurrentFrame != null) {
+            canvas.drawBitmap(mCurrentFrame, null, getBounds(), mPaint);
+        }
+    }
+
+    /**
+     * Play from the current frame, or from the first frame if the animation has ended.
+     * Nothing is scheduled while the drawable is invisible.
+     */
+    @Override
+    public void start() {
+        if(mFeeding) {// Frames shown as they arrive, the frame shown is shown for its whole delay
+            if(mReleased || mRunning || mFedFrames.isEmpty() || !isVisible()) {
+                return;
+            }
+            mRunning = true;
+            GifTicker.getInstance().schedule(mTickClient, SystemClock.uptimeMillis() + FrameClock.clampDelay(mFedDelaysMS.get((int)mFrameNumber)));
+            return;
+        }
+        if(mReleased || mRunning || mFrameClock == null || !isVisible()) {
+            return;
+        }
+        if(!mFrameClock.hasFrameAfter(mFrameNumber)) {
+            if(mFrameNumber == 0) {// Nothing to play
+                return;
+            }
+            if(mStreaming) {// The decoder was closed at the end, open the stream again, it starts once the first frames are in
+                if(mDecodeStatus != DecodeStatus.DECODE_STATUS_DECODING && !mDecodingAhead && mSource != null) {
+                    openStream();
+                }
+                return;
+            }
+            showFrame(0);
+        }
+        if(mStreaming && !mHasNextFrame && !mDecodingAhead) {
+            return;
+        }
+        mRunning = true;
+        // The frame shown is shown for its whole delay, frames aren't skipped for the time playback was stopped
+        mFrameClock.startAt(mFrameNumber, SystemClock.uptimeMillis());
+        GifTicker.getInstance().schedule(mTickClient, mFrameClock.timeOf(mFrameNumber + 1));
+    }
+
+    @Override
+    public void stop() {
+        mRunning = false;
+        mFrameDue = false;
+        GifTicker.getInstance().remove(mTickClient);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Show the frame due, skipping frames whose time has passed if playback is behind. Called by GifTicker.
+     * @return Uptime of the next frame, or GifTicker.STOP
+     */
+    private long tick(long now) {
+        if(!mRunning) {
+            return GifTicker.STOP;
+        }
+        if(!isVisible() || !isAttached()) {// Nothing shows the frames, don't keep waking up
+            stop();
+            return GifTicker.STOP;
+        }
+        if(mFeeding) {
+            return tickFed(now);
+        }
+        if(mStreaming) {
+            if(mDecodingAhead) {// Late, scheduled again once the frame is decoded
+                mFrameDue = true;
+                return GifTicker.WAIT;
+            }
+            if(!mHasNextFrame) {
+                mRunning = false;
+                return GifTicker.STOP;
+            }
+            showNextStreamFrame(now);
+        }
+        else {
+            final long frame = Math.max(mFrameNumber + 1, mFrameClock.frameAt(now));
+            reportDropped(frame - mFrameNumber - 1);
+            showFrame(frame);
+        }
+        if(!mFrameClock.hasFrameAfter(mFrameNumber)) {
+            mRunning = false;
+            return GifTicker.STOP;
+        }
+        return mFrameClock.timeOf(mFrameNumber + 1);
+    }
+
+    /**
+     * @return False if no view draws the drawable any more. Before Honeycomb there is no getCallback(),
+     * the drawable is then taken as attached and is only stopped by setVisible(false) or release()
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private boolean isAttached() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB || getCallback() != null;
+    }
+
+    private void reportDropped(long count) {
+        final GifMetricsListener metrics = sMetricsListener;
+        if(count > 0 && metrics != null) {
+            metrics.onFramesDropped(this, (int)Math.min(count, Integer.MAX_VALUE));
+        }
+    }
+
+    @Override
+    public boolean setVisible(boolean visible, boolean restart) {
+        final boolean changed = super.setVisible(visible, restart);
+        if(!visible) {
+            stop();
+        }
+        else if(changed || restart) {
+            stop();
+            if(mDecodeStatus == DecodeStatus.DECODE_STATUS_DECODED || mFeeding) {
                 start();
             }
         }
+        return changed;
     }
 
     @Override
@@ -117,9 +995,42 @@ public class GifAnimationDrawable extends AnimationDrawable {
         return mHeight;
     }
 
+    /**
+     * @return Size, frame count, duration and loop count of the gif. Only the size is known before the gif is first drawn,
+     * the rest once it has been read and scanned on the decode executor, see OnDecodeCompleteListener. Not updated in place, call again then.
+     */
+    public GifDecoder2.GifInfo getGifInfo() {
+        return mInfo;
+    }
+
     public DecodeStatus decodeStatus() {
         return mDecodeStatus;
     }
 
+    /**
+     * @return Number of frames decoded up front as bitmaps, 0 with Options.inStreaming or inIndexedFrames, and after release()
+     */
+    @Override
+    public int getNumberOfFrames() {
+        return (mFrameDrawables != null) ? mFrameDrawables.length : 0;
+    }
+
+    /**
+     * @return A frame decoded up front, see getNumberOfFrames(), or null. Don't use it after release(),
+     * its bitmap may then be reused by another gif.
+     */
+    @Override
+    public Drawable getFrame(int index) {
+        return (mFrameDrawables != null && index >= 0 && index < mFrameDrawables.length) ? mFrameDrawables[index] : null;
+    }
+
+    /**
+     * @return Delay of a frame as found in the gif, see getFrame()
+     */
+    @Override
+    public int getDuration(int index) {
+        return (mFrameDrawables != null && index >= 0 && index < mFrameDrawables.length) ? mFrameSet.delaysMS[index] : 0;
+    }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.kuoster.gifanimationdrawable;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Bitmaps given back by released gifs, used again by the next gifs of the same size and config
+ * instead of being left to the garbage collector, as GifBufferPool does for the decoder's arrays.
+ * Bitmaps are kept in buckets by exact size, up to MAX_POOL_BYTES in total, the oldest are recycled first.
+ * The content of a bitmap taken from the pool is undefined.
+ *
+ * All methods are thread-safe, bitmaps are taken on decoding threads and given back on the main thread.
+ */
+final class GifBitmapPool {
+    private static final int MAX_POOL_BYTES = 4 * 1024 * 1024;
+
+    private static final HashMap<Long, ArrayList<Bitmap>> sBitmaps = new HashMap<Long, ArrayList<Bitmap>>();
+    private static final LinkedList<Bitmap> sPooled = new LinkedList<Bitmap>();// Oldest first
+    private static int sPooledBytes = 0;
+
+    private GifBitmapPool() {
+    }
+
+    /**
+     * @return A mutable bitmap from the pool, or a new one if there is none of this size and config
+     */
+    static Bitmap obtainBitmap(int width, int height, Bitmap.Config config) {
+        synchronized(GifBitmapPool.class) {
+            final ArrayList<Bitmap> bucket = sBitmaps.get(key(width, height, config));
+            if(bucket != null && !bucket.isEmpty()) {
+                final Bitmap pooled = bucket.remove(bucket.size() - 1);// Most recently given back
+                sPooled.remove(pooled);
+                sPooledBytes -= byteCount(pooled);
+                return pooled;
+            }
+        }
+        return createBitmap(width, height, config);
+    }
+
+    /**
+     * @return A new mutable bitmap, reported to the metrics listener
+     */
+    static Bitmap createBitmap(int width, int height, Bitmap.Config config) {
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+        final GifMetricsListener metrics = GifAnimationDrawable.getMetricsListener();
+        if(metrics != null) {
+            metrics.onBitmapAllocated(byteCount(bitmap));
+        }
+        return bitmap;
+    }
+
+    /**
+     * Give a bitmap to the pool. It must not be used by the caller any more.
+     */
+    static synchronized void release(Bitmap bitmap) {
+        if(bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        final Long key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayList<Bitmap> bucket = sBitmaps.get(key);
+        if(bucket == null) {
+            bucket = new ArrayList<Bitmap>();
+            sBitmaps.put(key, bucket);
+        }
+        bucket.add(bitmap);
+        sPooled.addLast(bitmap);
+        sPooledBytes += byteCount(bitmap);
+        while(sPooledBytes > MAX_POOL_BYTES) {
+            evictOldest();
+        }
+    }
+
+    /**
+     * Recycle everything in the pool.
+     */
+    static synchronized void clear() {
+        while(!sPooled.isEmpty()) {
+            evictOldest();
+        }
+    }
+
+    private static long key(int width, int height, Bitmap.Config config) {
+        return ((long)config.ordinal() << 48) | ((long)width << 24) | height;
+    }
+
+    private static void evictOldest() {
+        final Bitmap bitmap = sPooled.removeFirst();
+        sPooledBytes -= byteCount(bitmap);
+        sBitmaps.get(key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig())).remove(bitmap);
+        bitmap.recycle();// Nothing else refers to a pooled bitmap
+    }
+
+    private static int byteCount(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
@@ -0,0 +1,300 @@
+package com.kuoster.gifanimationdrawable;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.util.TypedValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Decoded frames shared by every drawable showing the same gif, so a gif is decoded once
+ * however many drawables are created for it.
+ * Least recently used frame sets are dropped when the total size goes over the limit.
+ * Bitmaps of evicted frames go to GifBitmapPool once every drawable showing them has been released.
+ *
+ * load(), trimMemory() and onLowMemory() must be called on the main thread.
+ */
+public class GifCache {
+    private static final String TAG = GifCache.class.getSimpleName();
+
+    /** Part of the heap the cache may take by default */
+    private static final int DEFAULT_HEAP_DIVISOR = 8;
+
+    private static GifCache sInstance;
+
+    /**
+     * Decoded frames of a gif, either as bitmaps or as color indices.
+     */
+    static class FrameSet {
+        final GifDecoder2.GifInfo info;
+        final int loopCount;// See GifInfo.loopCount
+        final Bitmap[] bitmaps;// null if the frames are kept as color indices
+        final GifDecoder2.IndexedFrame[] images;// null if the frames are kept as bitmaps
+        final int[] delaysMS;
+        final int byteCount;
+        private Bitmap mFirstFrame;// Drawn from indexed frames while the rest was decoding, recycled with the frames
+
+        private int mUsers;// Drawables showing the frames, see acquire()
+        private boolean mCached;
+
+        /**
+         * @param firstFrame Bitmap of the first frame made for the indexed frames, given to GifBitmapPool with the frames, or null
+         */
+        FrameSet(GifDecoder2 dec, GifDecoder2.GifInfo info, boolean indexed, Bitmap firstFrame) {
+            final int frameCount = dec.getFrameCount();
+            this.info = info;
+            this.loopCount = dec.getLoopCount();
+            this.delaysMS = new int[frameCount];
+            int bytes = 0;
+            if(indexed) {
+                this.bitmaps = null;
+                this.images = new GifDecoder2.IndexedFrame[frameCount];
+                IdentityHashMap<GifDecoder2.Palette, GifDecoder2.Palette> palettes = new IdentityHashMap<GifDecoder2.Palette, GifDecoder2.Palette>();
+                for(int i = 0; i < frameCount; ++i) {
+                    images[i] = dec.getIndexedFrame(i);
+                    bytes += images[i].indices.length;
+                    if(palettes.put(images[i].palette, images[i].palette) == null) {// Palettes are shared by frames
+                        bytes += 4 * images[i].palette.colors.length;
+                    }
+                }
+            }
+            else {
+                this.images = null;
+                this.bitmaps = new Bitmap[frameCount];
+                for(int i = 0; i < frameCount; ++i) {
+                    bitmaps[i] = BitmapFrameSink.getFrame(dec, i);
+                    bytes += bitmaps[i].getRowBytes() * bitmaps[i].getHeight();
+                }
+            }
+            for(int i = 0; i < frameCount; ++i) {
+                delaysMS[i] = dec.getDelayMS(i);
+            }
+            this.mFirstFrame = firstFrame;
+            if(firstFrame != null) {
+                bytes += firstFrame.getRowBytes() * firstFrame.getHeight();
+            }
+            this.byteCount = bytes;
+        }
+
+        int getFrameCount() {
+            return delaysMS.length;
+        }
+
+        /**
+         * Give the bitmaps to GifBitmapPool, once nothing shows them and they are out of the cache.
+         */
+        private void recycleIfUnused() {
+            if(mUsers > 0 || mCached) {
+                return;
+            }
+            if(bitmaps != null) {
+                for(Bitmap bitmap : bitmaps) {
+                    GifBitmapPool.release(bitmap);
+                }
+            }
+            GifBitmapPool.release(mFirstFrame);
+            mFirstFrame = null;
+        }
+    }
+
+    /**
+     * Notified on the main thread about a frame set being decoded.
+     */
+    interface Callback {
+        /**
+         * The first frame is ready, called before onLoaded() unless the frames came from the cache.
+         */
+        void onFirstFrame(Bitmap first);
+
+        /**
+         * @param frames The decoded frames, with no frames if decoding failed
+         */
+        void onLoaded(FrameSet frames);
+    }
+
+    private final LruCache<String, FrameSet> mCache;
+    private final HashMap<String, ArrayList<Callback>> mPending = new HashMap<String, ArrayList<Callback>>();// Callbacks of decodes in flight, by key
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @param maxBytes Total size of decoded frames kept
+     */
+    public GifCache(int maxBytes) {
+        mCache = new LruCache<String, FrameSet>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, FrameSet frames) {
+                return frames.byteCount;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, FrameSet oldFrames, FrameSet newFrames) {
+                if(oldFrames != newFrames) {
+                    oldFrames.mCached = false;
+                    oldFrames.recycleIfUnused();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The cache used by GifAnimationDrawable, taking up to 1/8 of the heap
+     */
+    public static synchronized GifCache getInstance() {
+        if(sInstance == null) {
+            sInstance = new GifCache((int)Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_DIVISOR));
+        }
+        return sInstance;
+    }
+
+    /**
+     * The same id gives another gif for another density or configuration, e.g. drawable-hdpi instead of drawable-mdpi,
+     * so the key has the density and the file the id resolves to.
+     */
+    static String resourceKey(Resources res, int resId, int sampleSize, Bitmap.Config config, boolean indexed) {
+        final TypedValue value = new TypedValue();
+        res.getValue(resId, value, true);
+        return "res:" + resId + ":" + value.density + ":" + value.string + ":" + sampleSize + ":" + config + (indexed ? ":indexed" : "");
+    }
+
+    static String fileKey(String filepath, long lastModified, int sampleSize, Bitmap.Config config, boolean indexed) {
+        return "file:" + filepath + ":" + lastModified + ":" + sampleSize + ":" + config + (indexed ? ":indexed" : "");
+    }
+
+    /**
+     * @return Frames in the cache, or null
+     */
+    FrameSet get(String key) {
+        return mCache.get(key);
+    }
+
+    /**
+     * Decode a gif on the decode executor and add its frames to the cache.
+     * If the same key is already being decoded, the callback waits for that decode instead.
+     * @param src Gif data, not read if the key is being decoded
+     * @param info Gif properties kept with the frames
+     * @param sampleSize See GifDecoder2.setSampleSize()
+     * @param config Config of the frame bitmaps, see GifDecoder2.setPixelFormat()
+     * @param indexed Keep the frames as color indices, see GifDecoder2.setKeepIndexedFrames()
+     */
+    void load(final String key, final GifByteSource src, final GifDecoder2.GifInfo info, final int sampleSize, final Bitmap.Config config, final boolean indexed, Callback callback) {
+        ArrayList<Callback> callbacks = mPending.get(key);
+        if(callbacks != null) {// Share the decode in flight
+            callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<Callback>();
+        callbacks.add(callback);
+        mPending.put(key, callbacks);
+
+        GifAnimationDrawable.getDecodeExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap[] firstFrame = new Bitmap[1];// Indexed frames only, see FrameSet()
+                final GifDecoder2 dec = new GifDecoder2();
+                dec.setSampleSize(sampleSize);
+                dec.setPixelFormat(BitmapFrameSink.formatOf(config));
+                dec.setFrameSinkFactory(BitmapFrameSink.FACTORY);
+                dec.setMetricsListener(GifAnimationDrawable.getMetricsListener());
+                dec.setKeepIndexedFrames(indexed);
+                dec.setOnFrameDecodedListener(new GifDecoder2.OnFrameDecodedListener() {
+                    @Override
+                    public void onFrameDecoded(GifDecoder2 decoder, int index) {
+                        if(index == 0) {
+                            final Bitmap first;
+                            if(indexed) {
+                                first = GifBitmapPool.createBitmap(decoder.getWidth(), decoder.getHeight(), config);
+                                IndexedFramePlayer.drawFirstFrame(decoder, new BitmapFrameSink(first));
+                                firstFrame[0] = first;
+                            }
+                            else {
+                                first = BitmapFrameSink.getFrame(decoder, 0);
+                            }
+                            mMainHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    for(Callback c : mPending.get(key)) {
+                                        c.onFirstFrame(first);
+                                    }
+                                }
+                            });
+                        }
+                    }
+                });
+                try {
+                    dec.load(src);
+                }
+                catch (RuntimeException e) {
+                    Log.e(TAG, "load() failed", e);
+                }
+                final FrameSet frames = new FrameSet(dec, info, indexed, firstFrame[0]);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Callbacks acquire the frames before they can be evicted
+                        for(Callback c : mPending.remove(key)) {
+                            c.onLoaded(frames);
+                        }
+                        if(frames.getFrameCount() > 0) {// Don't keep failures, the next request tries again
+                            frames.mCached = true;
+                            mCache.put(key, frames);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Note frames as shown by a drawable, they aren't recycled until release() even if evicted.
+     */
+    void acquire(FrameSet frames) {
+        frames.mUsers++;
+    }
+
+    /**
+     * Note frames as no longer shown by a drawable. Bitmaps of evicted frames go to GifBitmapPool
+     * when the last drawable showing them releases them.
+     */
+    void release(FrameSet frames) {
+        frames.mUsers--;
+        frames.recycleIfUnused();
+    }
+
+    /**
+     * Give memory back as the system asks for it. Call from onTrimMemory() of the Application or an Activity.
+     * @param level Level passed to onTrimMemory()
+     */
+    public void trimMemory(int level) {
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mCache.evictAll();
+            GifBitmapPool.clear();
+            GifBufferPool.clear();
+        }
+        else if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mCache.trimToSize(mCache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * Drop all frames. Call from onLowMemory() of the Application or an Activity.
+     */
+    public void onLowMemory() {
+        mCache.evictAll();
+        GifBitmapPool.clear();
+        GifBufferPool.clear();
+    }
+
+    /**
+     * @return Total size of the frames in the cache, in bytes
+     */
+    public int size() {
+        return mCache.size();
+    }
+}
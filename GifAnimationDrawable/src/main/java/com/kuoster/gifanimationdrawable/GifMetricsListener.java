@@ -0,0 +1,29 @@
+package com.kuoster.gifanimationdrawable;
+
+/**
+ * Decoding and playback numbers of every GifAnimationDrawable, for performance dashboards.
+ * Set with GifAnimationDrawable.setMetricsListener(). Nothing is measured while no listener is set.
+ *
+ * onFrameMetrics() and onBitmapAllocated() are called on decoding threads, the rest on the main thread.
+ * Calls should return quickly, they are made while decoding and drawing.
+ */
+public interface GifMetricsListener extends GifDecoder2.MetricsListener {
+    /**
+     * A bitmap was allocated for frames, none of the right size being in the pool.
+     * @param byteCount Size of the bitmap's pixels
+     */
+    void onBitmapAllocated(int byteCount);
+
+    /**
+     * A drawable looked for its frames in GifCache before decoding.
+     * @param key Cache key of the gif, its source and decoding options
+     * @param hit True if the frames were in the cache, false if they are being decoded
+     */
+    void onCacheLookup(String key, boolean hit);
+
+    /**
+     * Frames were skipped because playback fell behind the frame delays.
+     * @param count Frames not shown, at least 1
+     */
+    void onFramesDropped(GifAnimationDrawable drawable, int count);
+}
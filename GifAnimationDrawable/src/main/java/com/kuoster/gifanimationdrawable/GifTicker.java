@@ -0,0 +1,201 @@
+package com.kuoster.gifanimationdrawable;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * Wakes up the main thread once for every playing gif that has a frame due, instead of each drawable
+ * scheduling its own callbacks. Ticks are aligned with display frames through Choreographer from Jelly Bean,
+ * and only requested for the earliest frame due, so nothing runs between frames or once no gif is playing.
+ * Only clients with a frame due are called, and only those invalidate themselves.
+ *
+ * Must be used on the main thread.
+ */
+final class GifTicker {
+    /** Returned by Client.onTick() to be removed */
+    static final long STOP = -1;
+    /** Returned by Client.onTick() to wait for the next schedule() */
+    static final long WAIT = Long.MAX_VALUE;
+
+    interface Client {
+        /**
+         * Called once the time given to schedule() or returned by the last call has come.
+         * @param now Uptime of the tick
+         * @return Uptime of the next call, WAIT or STOP
+         */
+        long onTick(long now);
+    }
+
+    private static final class Entry {
+        final Client client;
+        long dueTime;
+
+        Entry(Client client) {
+            this.client = client;
+        }
+    }
+
+    private static GifTicker sInstance;
+
+    private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+    private final ArrayList<Entry> mTicking = new ArrayList<Entry>();// Entries of the tick running, reused
+    private final Ticks mTicks;
+    private long mTickTime = WAIT;// Uptime the requested tick is for, WAIT if none is requested
+
+    private GifTicker() {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mTicks = new ChoreographerTicks(this);
+        }
+        else {
+            mTicks = new HandlerTicks(this);
+        }
+    }
+
+    static GifTicker getInstance() {
+        if(sInstance == null) {
+            sInstance = new GifTicker();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Call a client on the first tick at or after time. Replaces the time of a client already scheduled.
+     */
+    void schedule(Client client, long time) {
+        Entry entry = find(client);
+        if(entry == null) {
+            entry = new Entry(client);
+            mEntries.add(entry);
+        }
+        entry.dueTime = time;
+        requestTick(time);
+    }
+
+    /**
+     * Stop calling a client.
+     */
+    void remove(Client client) {
+        final Entry entry = find(client);
+        if(entry == null) {
+            return;
+        }
+        mEntries.remove(entry);
+        if(mEntries.isEmpty() && mTickTime != WAIT) {// Nothing left to wake up for
+            mTicks.cancel();
+            mTickTime = WAIT;
+        }
+    }
+
+    private Entry find(Client client) {
+        for(int i = 0; i < mEntries.size(); ++i) {
+            if(mEntries.get(i).client == client) {
+                return mEntries.get(i);
+            }
+        }
+        return null;
+    }
+
+    private void requestTick(long time) {
+        if(time >= mTickTime) {// A tick is coming before
+            return;
+        }
+        mTicks.cancel();
+        mTicks.request(Math.max(0, time - SystemClock.uptimeMillis()));
+        mTickTime = time;
+    }
+
+    private void tick() {
+        final long now = SystemClock.uptimeMillis();
+        mTickTime = WAIT;
+        // Clients can remove themselves and others while being called
+        mTicking.addAll(mEntries);
+        for(int i = 0; i < mTicking.size(); ++i) {
+            final Entry entry = mTicking.get(i);
+            if(entry.dueTime <= now && mEntries.contains(entry)) {
+                final long next = entry.client.onTick(now);
+                if(next == STOP) {
+                    mEntries.remove(entry);
+                }
+                else {
+                    entry.dueTime = next;
+                }
+            }
+        }
+        mTicking.clear();
+
+        long next = WAIT;
+        for(int i = 0; i < mEntries.size(); ++i) {
+            next = Math.min(next, mEntries.get(i).dueTime);
+        }
+        if(next != WAIT) {
+            requestTick(next);
+        }
+    }
+
+    private interface Ticks {
+        void request(long delayMS);
+
+        void cancel();
+    }
+
+    /**
+     * Ticks on display frames.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class ChoreographerTicks implements Ticks, Choreographer.FrameCallback {
+        private final GifTicker mTicker;
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+
+        ChoreographerTicks(GifTicker ticker) {
+            mTicker = ticker;
+        }
+
+        @Override
+        public void request(long delayMS) {
+            mChoreographer.postFrameCallbackDelayed(this, delayMS);
+        }
+
+        @Override
+        public void cancel() {
+            mChoreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mTicker.tick();
+        }
+    }
+
+    /**
+     * Ticks on the main looper, before Choreographer.
+     */
+    private static final class HandlerTicks implements Ticks, Runnable {
+        private final GifTicker mTicker;
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        HandlerTicks(GifTicker ticker) {
+            mTicker = ticker;
+        }
+
+        @Override
+        public void request(long delayMS) {
+            mHandler.postDelayed(this, delayMS);
+        }
+
+        @Override
+        public void cancel() {
+            mHandler.removeCallbacks(this);
+        }
+
+        @Override
+        public void run() {
+            mTicker.tick();
+        }
+    }
+}
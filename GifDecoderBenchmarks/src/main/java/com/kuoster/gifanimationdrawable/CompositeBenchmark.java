@@ -0,0 +1,68 @@
+package com.kuoster.gifanimationdrawable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Making every frame of a loop from decompressed images: drawing, disposal, and writing the changed rectangles
+ * into an IntBufferFrameSink, see IndexedFramePlayer.advanceTo().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositeBenchmark {
+    @Param({GifCorpus.ANIMATION, GifCorpus.ANIMATION_INTERLACED, GifCorpus.LARGE, GifCorpus.MANY_FRAMES, GifCorpus.SPARSE, GifCorpus.NOISE})
+    public String gif;
+
+    @Param({"ARGB_8888", "RGB_565"})
+    public GifFrameSink.PixelFormat format;
+
+    private int mGifBytes;
+    private IndexedFramePlayer mPlayer;
+
+    @Setup
+    public void setUp() {
+        final byte[] data = GifCorpus.get(gif);
+        mGifBytes = data.length;
+        final GifDecoder2 dec = new GifDecoder2();
+        dec.setKeepIndexedFrames(true);
+        dec.load(data);
+        final int width = dec.getWidth();
+        final int height = dec.getHeight();
+        mPlayer = new IndexedFramePlayer(width, height, format, new IntBufferFrameSink(new int[width * height], width));
+        for(int i = 0; i < dec.getFrameCount(); ++i) {
+            mPlayer.addFrame(dec.getIndexedFrame(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPlayer.release();
+    }
+
+    @Benchmark
+    public int loop(Throughput counters) {
+        final IndexedFramePlayer player = mPlayer;
+        final int frameCount = player.getFrameCount();
+        for(int i = 0; i < frameCount; ++i) {
+            player.advance();
+        }
+        counters.count(mGifBytes, frameCount);
+        return player.getCurrentIndex();
+    }
+}
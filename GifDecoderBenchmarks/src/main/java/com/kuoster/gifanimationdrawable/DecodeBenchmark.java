@@ -0,0 +1,79 @@
+package com.kuoster.gifanimationdrawable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every stage together, from gif data to ARGB frames, as a JVM caller of GifDecoder2 runs them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    @Param({GifCorpus.ANIMATION, GifCorpus.ANIMATION_INTERLACED, GifCorpus.LARGE, GifCorpus.MANY_FRAMES, GifCorpus.SPARSE, GifCorpus.NOISE})
+    public String gif;
+
+    private byte[] mData;
+    private IntBufferFrameSink mSink;
+
+    @Setup
+    public void setUp() {
+        mData = GifCorpus.get(gif);
+        final GifDecoder2.GifInfo info = GifDecoder2.scan(GifByteSource.wrap(mData)).info;
+        mSink = new IntBufferFrameSink(new int[info.width * info.height], info.width);
+    }
+
+    /**
+     * load() on the calling thread only, every frame into a new IntBufferFrameSink.
+     */
+    @Benchmark
+    public int load(Throughput counters) {
+        return load(false, counters);
+    }
+
+    /**
+     * load() with images decompressed on a second thread, see GifDecoder2.setPipelined(). Compare with load() to decide whether to turn it on.
+     */
+    @Benchmark
+    public int loadPipelined(Throughput counters) {
+        return load(true, counters);
+    }
+
+    private int load(boolean pipelined, Throughput counters) {
+        final GifDecoder2 dec = new GifDecoder2();
+        dec.setPipelined(pipelined);
+        dec.load(mData);
+        counters.count(mData.length, dec.getFrameCount());
+        return dec.getFrameCount();
+    }
+
+    /**
+     * open() and decodeNextFrame() into a single sink, nothing is kept but the canvas.
+     */
+    @Benchmark
+    public int stream(Throughput counters) {
+        final GifDecoder2 dec = new GifDecoder2();
+        dec.open(mData);
+        int frameCount = 0;
+        while(dec.decodeNextFrame(mSink)) {
+            frameCount++;
+        }
+        dec.close();
+        counters.count(mData.length, frameCount);
+        return frameCount;
+    }
+}
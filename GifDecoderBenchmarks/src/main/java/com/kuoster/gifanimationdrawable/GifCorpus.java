@@ -0,0 +1,201 @@
+package com.kuoster.gifanimationdrawable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Gifs the benchmarks run over: the two bundled with the library, and generated ones for the cases they don't cover.
+ * Generated gifs are made from fixed seeds, so every run measures the same data.
+ * Run main() with a directory to write them out, to look at them or to profile them with other tools.
+ */
+public final class GifCorpus {
+    /** Bundled with the library, 18 small frames */
+    static final String ANIMATION = "animation.gif";
+    /** Bundled with the library, the same frames interlaced */
+    static final String ANIMATION_INTERLACED = "animation_interlaced.gif";
+    /** 1600x1200, 8 full frames of moving gradients */
+    static final String LARGE = "large.gif";
+    /** 160x120, 300 full frames */
+    static final String MANY_FRAMES = "many_frames.gif";
+    /** 800x600, a full first frame then 200 frames each changing a 32x32 square */
+    static final String SPARSE = "sparse.gif";
+    /** 512x512, 10 frames of random indices over the 256 colors, which hardly compress */
+    static final String NOISE = "noise.gif";
+
+    static final String[] NAMES = {ANIMATION, ANIMATION_INTERLACED, LARGE, MANY_FRAMES, SPARSE, NOISE};
+
+    private static final int FOREVER = 0;// Netscape loop count
+    private static final HashMap<String, byte[]> sGifs = new HashMap<String, byte[]>();
+
+    private GifCorpus() {
+    }
+
+    /**
+     * @return The data of a gif of NAMES, generated or read on first use
+     */
+    static synchronized byte[] get(String name) {
+        byte[] gif = sGifs.get(name);
+        if(gif == null) {
+            gif = make(name);
+            sGifs.put(name, gif);
+        }
+        return gif;
+    }
+
+    private static byte[] make(String name) {
+        if(LARGE.equals(name)) {
+            return makeLarge();
+        }
+        if(MANY_FRAMES.equals(name)) {
+            return makeManyFrames();
+        }
+        if(SPARSE.equals(name)) {
+            return makeSparse();
+        }
+        if(NOISE.equals(name)) {
+            return makeNoise();
+        }
+        return readResource(name);
+    }
+
+    private static byte[] readResource(String name) {
+        final InputStream is = GifCorpus.class.getResourceAsStream("/" + name);
+        if(is == null) {
+            throw new IllegalArgumentException("No gif named " + name);
+        }
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[16 * 1024];
+            for(int n = is.read(buffer); n >= 0; n = is.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            is.close();
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Error reading " + name, e);
+        }
+    }
+
+    /**
+     * @return A 6x6x6 color cube followed by 40 grays
+     */
+    private static int[] palette() {
+        final int[] colors = new int[256];
+        for(int i = 0; i < 216; ++i) {
+            colors[i] = ((i / 36) * 51 << 16) | ((i / 6 % 6) * 51 << 8) | (i % 6) * 51;
+        }
+        for(int i = 216; i < 256; ++i) {
+            final int gray = (i - 216) * 255 / 39;
+            colors[i] = (gray << 16) | (gray << 8) | gray;
+        }
+        return colors;
+    }
+
+    private static byte[] makeLarge() {
+        final int width = 1600;
+        final int height = 1200;
+        final GifWriter writer = new GifWriter(width, height, palette(), FOREVER);
+        final byte[] indices = new byte[width * height];
+        for(int frame = 0; frame < 8; ++frame) {
+            for(int y = 0; y < height; ++y) {
+                for(int x = 0; x < width; ++x) {
+                    indices[y * width + x] = (byte)((((x + 24 * frame) >> 4) + (y >> 5)) % 216);
+                }
+            }
+            writer.addFrame(indices, 0, 0, width, height, 100, GifDecoder2.GraphicControlExtension.DO_NOT_DISPOSE, GifCompositor.NO_TRANSPARENCY_INDEX);
+        }
+        return writer.finish();
+    }
+
+    private static byte[] makeManyFrames() {
+        final int width = 160;
+        final int height = 120;
+        final GifWriter writer = new GifWriter(width, height, palette(), FOREVER);
+        final byte[] indices = new byte[width * height];
+        for(int frame = 0; frame < 300; ++frame) {
+            // Rings around a center going round the canvas
+            final int cx = width / 2 + (int)(50 * Math.cos(frame * 0.05));
+            final int cy = height / 2 + (int)(40 * Math.sin(frame * 0.05));
+            for(int y = 0; y < height; ++y) {
+                for(int x = 0; x < width; ++x) {
+                    final int d2 = (x - cx) * (x - cx) + (y - cy) * (y - cy);
+                    indices[y * width + x] = (byte)(216 + (d2 >> 6) % 40);
+                }
+            }
+            writer.addFrame(indices, 0, 0, width, height, 40, GifDecoder2.GraphicControlExtension.DO_NOT_DISPOSE, GifCompositor.NO_TRANSPARENCY_INDEX);
+        }
+        return writer.finish();
+    }
+
+    private static byte[] makeSparse() {
+        final int width = 800;
+        final int height = 600;
+        final int size = 32;
+        final GifWriter writer = new GifWriter(width, height, palette(), FOREVER);
+        final Random random = new Random(22);
+        final byte[] background = new byte[width * height];
+        for(int y = 0; y < height; ++y) {
+            for(int x = 0; x < width; ++x) {
+                background[y * width + x] = (byte)(((x >> 5) + (y >> 5)) % 2 == 0 ? 215 : 230);
+            }
+        }
+        writer.addFrame(background, 0, 0, width, height, 50, GifDecoder2.GraphicControlExtension.DO_NOT_DISPOSE, GifCompositor.NO_TRANSPARENCY_INDEX);
+        final int transparent = 255;
+        final byte[] square = new byte[size * size];
+        for(int frame = 0; frame < 200; ++frame) {
+            final int color = random.nextInt(216);
+            for(int y = 0; y < size; ++y) {
+                for(int x = 0; x < size; ++x) {// A disc, the corners stay as they were
+                    final int dx = 2 * x - size + 1;
+                    final int dy = 2 * y - size + 1;
+                    square[y * size + x] = (byte)(dx * dx + dy * dy <= size * size ? color : transparent);
+                }
+            }
+            writer.addFrame(square, random.nextInt(width - size), random.nextInt(height - size), size, size, 50,
+                    GifDecoder2.GraphicControlExtension.DO_NOT_DISPOSE, transparent);
+        }
+        return writer.finish();
+    }
+
+    private static byte[] makeNoise() {
+        final int width = 512;
+        final int height = 512;
+        final GifWriter writer = new GifWriter(width, height, palette(), FOREVER);
+        final Random random = new Random(8);
+        final byte[] indices = new byte[width * height];
+        for(int frame = 0; frame < 10; ++frame) {
+            random.nextBytes(indices);
+            writer.addFrame(indices, 0, 0, width, height, 100, GifDecoder2.GraphicControlExtension.DO_NOT_DISPOSE, GifCompositor.NO_TRANSPARENCY_INDEX);
+        }
+        return writer.finish();
+    }
+
+    /**
+     * Write every gif of the corpus into a directory.
+     * @param args The directory
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 1) {
+            System.err.println("Usage: GifCorpus <directory>");
+            return;
+        }
+        final File dir = new File(args[0]);
+        if(!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        for(String name : NAMES) {
+            final FileOutputStream out = new FileOutputStream(new File(dir, name));
+            try {
+                out.write(get(name));
+            }
+            finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.kuoster.gifanimationdrawable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes gifs with a 256 color global color table, for the generated part of GifCorpus.
+ * Image data is LZW compressed as real encoders do, with variable code sizes and a clear code once the dictionary is full,
+ * so the decoder runs through the same paths as with gifs found in the wild.
+ */
+final class GifWriter {
+    private static final int ROOT_SIZE = 8;
+    private static final int CLEAR_CODE = 1 << ROOT_SIZE;
+    private static final int END_OF_INFORMATION = CLEAR_CODE + 1;
+    private static final int MAX_CODE_SIZE = 12;
+    private static final int MAX_DICTIONARY_SIZE = 1 << MAX_CODE_SIZE;
+    private static final int HASH_SIZE = 2 * MAX_DICTIONARY_SIZE;// Power of 2, at most half full
+
+    private final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+
+    // LZW state, entries are (prefix code << 8 | pix) keys hashed to codes
+    private final int[] mKeys = new int[HASH_SIZE];// Key + 1, 0 for an empty slot
+    private final int[] mCodes = new int[HASH_SIZE];
+    private int mNextCode;
+    private int mCodeSize;
+    private int mMaxCode;// Code size grows once mNextCode goes past it
+
+    // Packed codes, written out in sub-blocks of up to 255 bytes
+    private final byte[] mSubBlock = new byte[255];
+    private int mSubBlockLength;
+    private int mBitBuffer;
+    private int mBitCount;
+
+    /**
+     * Write the header and the global color table.
+     * @param colors 256 RGB colors
+     * @param loopCount Netscape loop count, 0 to loop forever, -1 for no loop extension
+     */
+    GifWriter(int width, int height, int[] colors, int loopCount) {
+        writeAscii("GIF89a");
+        writeShort(width);
+        writeShort(height);
+        mOut.write(0x80 | (7 << 4) | 7);// Global color table of 256 colors, 8 bits per channel
+        mOut.write(0);// Background index
+        mOut.write(0);// No pixel aspect ratio
+        for(int i = 0; i < 256; ++i) {
+            mOut.write(colors[i] >> 16);
+            mOut.write(colors[i] >> 8);
+            mOut.write(colors[i]);
+        }
+        if(loopCount >= 0) {
+            mOut.write(0x21);
+            mOut.write(0xff);
+            mOut.write(11);
+            writeAscii("NETSCAPE2.0");
+            mOut.write(3);
+            mOut.write(1);
+            writeShort(loopCount);
+            mOut.write(0);
+        }
+    }
+
+    /**
+     * Write a graphic control extension and an image block.
+     * @param indices Color indices of the image block, rows of width one after the other
+     * @param disposalMethod See GifDecoder2.GraphicControlExtension
+     * @param transparencyIndex Transparent color, or GifCompositor.NO_TRANSPARENCY_INDEX
+     */
+    void addFrame(byte[] indices, int x, int y, int width, int height, int delayMS, int disposalMethod, int transparencyIndex) {
+        final boolean transparent = transparencyIndex != GifCompositor.NO_TRANSPARENCY_INDEX;
+        mOut.write(0x21);
+        mOut.write(0xf9);
+        mOut.write(4);
+        mOut.write((disposalMethod << 2) | (transparent ? 1 : 0));
+        writeShort(delayMS / 10);
+        mOut.write(transparent ? transparencyIndex : 0);
+        mOut.write(0);
+
+        mOut.write(0x2c);
+        writeShort(x);
+        writeShort(y);
+        writeShort(width);
+        writeShort(height);
+        mOut.write(0);// No local color table, not interlaced
+        writeImageData(indices, width * height);
+    }
+
+    /**
+     * Write the trailer.
+     * @return The gif
+     */
+    byte[] finish() {
+        mOut.write(0x3b);
+        return mOut.toByteArray();
+    }
+
+    private void writeImageData(byte[] indices, int count) {
+        mOut.write(ROOT_SIZE);
+        resetDictionary();
+        output(CLEAR_CODE);
+
+        int prefix = indices[0] & 0xff;
+        for(int i = 1; i < count; ++i) {
+            final int pix = indices[i] & 0xff;
+            final int key = (prefix << 8) | pix;
+            int slot = slotOf(key);
+            if(mKeys[slot] != 0) {// pixStr of prefix + pix is known, keep extending it
+                prefix = mCodes[slot];
+                continue;
+            }
+            output(prefix);
+            if(mNextCode < MAX_DICTIONARY_SIZE) {
+                mKeys[slot] = key + 1;
+                mCodes[slot] = mNextCode++;
+            }
+            else {// Full, start over
+                output(CLEAR_CODE);// At the current code size
+                resetDictionary();
+            }
+            prefix = pix;
+        }
+        output(prefix);
+        output(END_OF_INFORMATION);
+
+        if(mBitCount > 0) {
+            writeCodeByte(mBitBuffer);
+        }
+        mBitBuffer = 0;
+        mBitCount = 0;
+        flushSubBlock();
+        mOut.write(0);// Block terminator
+    }
+
+    private int slotOf(int key) {
+        int slot = (key * 0x9e3779b1) >>> (32 - 13);// HASH_SIZE is 2^13
+        while(mKeys[slot] != 0 && mKeys[slot] != key + 1) {
+            slot = (slot + 1) & (HASH_SIZE - 1);
+        }
+        return slot;
+    }
+
+    private void resetDictionary() {
+        Arrays.fill(mKeys, 0);
+        mNextCode = END_OF_INFORMATION + 1;
+        mCodeSize = ROOT_SIZE + 1;
+        mMaxCode = (1 << mCodeSize) - 1;
+    }
+
+    /**
+     * Write a code with the current code size, growing the code size once the dictionary has gone past it,
+     * the same code later than the decoder sees it.
+     */
+    private void output(int code) {
+        mBitBuffer |= code << mBitCount;
+        mBitCount += mCodeSize;
+        while(mBitCount >= 8) {
+            writeCodeByte(mBitBuffer);
+            mBitBuffer >>>= 8;
+            mBitCount -= 8;
+        }
+        if(code != CLEAR_CODE && mNextCode > mMaxCode && mCodeSize < MAX_CODE_SIZE) {
+            mCodeSize++;
+            mMaxCode = (mCodeSize == MAX_CODE_SIZE) ? MAX_DICTIONARY_SIZE : (1 << mCodeSize) - 1;
+        }
+    }
+
+    private void writeCodeByte(int b) {
+        mSubBlock[mSubBlockLength++] = (byte)b;
+        if(mSubBlockLength == mSubBlock.length) {
+            flushSubBlock();
+        }
+    }
+
+    private void flushSubBlock() {
+        if(mSubBlockLength > 0) {
+            mOut.write(mSubBlockLength);
+            mOut.write(mSubBlock, 0, mSubBlockLength);
+            mSubBlockLength = 0;
+        }
+    }
+
+    private void writeShort(int value) {
+        mOut.write(value);
+        mOut.write(value >> 8);
+    }
+
+    private void writeAscii(String s) {
+        for(int i = 0; i < s.length(); ++i) {
+            mOut.write(s.charAt(i));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.kuoster.gifanimationdrawable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LZW decompression of every image block into color indices, see LZWDictionary.decode().
+ * The image data is found once in setUp(), nothing else of the gif is read while measuring.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LzwBenchmark {
+    @Param({GifCorpus.ANIMATION, GifCorpus.ANIMATION_INTERLACED, GifCorpus.LARGE, GifCorpus.MANY_FRAMES, GifCorpus.SPARSE, GifCorpus.NOISE})
+    public String gif;
+
+    private GifByteSource mSource;
+    private int[] mDataStarts;// Position of the first sub-block of each image
+    private int[] mRootSizes;
+    private int[] mPixelCounts;
+    private final LZWDictionary mCodeBook = new LZWDictionary();
+    private byte[] mPixels;// Largest image block
+
+    @Setup
+    public void setUp() {
+        mSource = GifByteSource.wrap(GifCorpus.get(gif));
+        final GifFrameIndex index = GifDecoder2.scan(mSource.duplicate());
+        final int frameCount = index.getFrameCount();
+        mDataStarts = new int[frameCount];
+        mRootSizes = new int[frameCount];
+        mPixelCounts = new int[frameCount];
+        int maxPixels = 0;
+        final GifByteSource src = mSource.duplicate();
+        for(int i = 0; i < frameCount; ++i) {
+            src.seek(index.frames[i].offset);
+            while(src.readByte() == 0x21) {// Extensions before the image, up to the image separator
+                src.readByte();// Label
+                skipSubBlocks(src);
+            }
+            src.skip(4);// x, y
+            final int width = src.readUShort();
+            final int height = src.readUShort();
+            final int flags = src.readByte();
+            if((flags & 0x80) == 0x80) {// Local color table
+                src.skip(3 * (1 << ((flags & 0x07) + 1)));
+            }
+            mRootSizes[i] = src.readByte();
+            mDataStarts[i] = src.position();
+            mPixelCounts[i] = width * height;
+            maxPixels = Math.max(maxPixels, width * height);
+        }
+        mPixels = new byte[maxPixels];
+    }
+
+    private static void skipSubBlocks(GifByteSource src) {
+        for(int size = src.readByte(); size > 0; size = src.readByte()) {
+            src.skip(size);
+        }
+    }
+
+    @Benchmark
+    public int decode(Throughput counters) {
+        final GifByteSource src = mSource;
+        final LZWDictionary codeBook = mCodeBook;
+        int decoded = 0;
+        for(int i = 0; i < mDataStarts.length; ++i) {
+            src.seek(mDataStarts[i]);
+            codeBook.reset(mRootSizes[i], mPixels, 0, mPixelCounts[i]);
+            codeBook.decode(src);
+            decoded += codeBook.getOutputPosition();
+        }
+        counters.count(src.limit(), mDataStarts.length);
+        return decoded;
+    }
+}
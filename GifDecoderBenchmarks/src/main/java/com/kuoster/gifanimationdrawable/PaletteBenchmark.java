@@ -0,0 +1,67 @@
+package com.kuoster.gifanimationdrawable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping the color indices of every image block to colors on the canvas, see GifCompositor.drawImage().
+ * The images are decompressed once in setUp(), and drawn without disposal or output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaletteBenchmark {
+    @Param({GifCorpus.ANIMATION, GifCorpus.ANIMATION_INTERLACED, GifCorpus.LARGE, GifCorpus.MANY_FRAMES, GifCorpus.SPARSE, GifCorpus.NOISE})
+    public String gif;
+
+    @Param({"ARGB_8888", "RGB_565"})
+    public GifFrameSink.PixelFormat format;
+
+    private int mGifBytes;
+    private GifDecoder2.IndexedFrame[] mImages;
+    private GifCompositor mCompositor;
+
+    @Setup
+    public void setUp() {
+        final byte[] data = GifCorpus.get(gif);
+        mGifBytes = data.length;
+        final GifDecoder2 dec = new GifDecoder2();
+        dec.setKeepIndexedFrames(true);
+        dec.load(data);
+        mImages = new GifDecoder2.IndexedFrame[dec.getFrameCount()];
+        for(int i = 0; i < mImages.length; ++i) {
+            mImages[i] = dec.getIndexedFrame(i);
+        }
+        mCompositor = GifCompositor.create(dec.getWidth(), dec.getHeight(), format);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mCompositor.release();
+    }
+
+    @Benchmark
+    public Object draw(Throughput counters) {
+        final GifCompositor compositor = mCompositor;
+        for(GifDecoder2.IndexedFrame image : mImages) {
+            compositor.drawImage(image.indices, image.indexCount, image.x, image.y, image.width, image.height, image.interlaced, image.palette);
+        }
+        counters.count(mGifBytes, mImages.length);
+        return compositor.pixelArray();
+    }
+}
@@ -0,0 +1,43 @@
+package com.kuoster.gifanimationdrawable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the block structure without decoding any pixels, as probe() and seeking do, see GifDecoder2.scan().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({GifCorpus.ANIMATION, GifCorpus.ANIMATION_INTERLACED, GifCorpus.LARGE, GifCorpus.MANY_FRAMES, GifCorpus.SPARSE, GifCorpus.NOISE})
+    public String gif;
+
+    private GifByteSource mSource;
+
+    @Setup
+    public void setUp() {
+        mSource = GifByteSource.wrap(GifCorpus.get(gif));
+    }
+
+    @Benchmark
+    public int scan(Throughput counters) {
+        final GifFrameIndex index = GifDecoder2.scan(mSource.duplicate());
+        counters.count(mSource.limit(), index.getFrameCount());
+        return index.frames.length;
+    }
+}
@@ -0,0 +1,32 @@
+package com.kuoster.gifanimationdrawable;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counters reported next to the score of a benchmark as rates, in MB/s and frames/s with the benchmarks' time unit.
+ * Every operation takes a whole gif through a stage, so megabytes counts the size of the gif data,
+ * and the stages of a gif compare directly.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+    /** Gif data taken through the stage, in MB of 10^6 bytes */
+    public double megabytes;
+    /** Frames taken through the stage */
+    public long frames;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+        frames = 0;
+    }
+
+    void count(int gifBytes, int frameCount) {
+        megabytes += gifBytes / 1e6;
+        frames += frameCount;
+    }
+}
@@ -0,0 +1,201 @@
+package com.kuoster.gifanimationdrawable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads the properties, frame delays and a first frame preview of many gifs at once, for servers taking in gifs.
+ * Every gif is decoded on the executor by a GifDecoder2 of its own, so gifs run on as many cores as the executor has
+ * and nothing but the thread-safe GifBufferPool is shared between them.
+ * Only the first frame is decoded, streamed into the preview, so the memory a gif takes doesn't depend on its frame count.
+ *
+ * submit() blocks while Options.inMaxPending gifs are waiting or being decoded,
+ * so a producer faster than the executor doesn't pile up gif data on the heap.
+ */
+public class GifBatchDecoder {
+    /**
+     * Options controlling how gifs are decoded.
+     */
+    public static class Options {
+        /**
+         * Largest width and height of the previews. Larger gifs are subsampled, see GifDecoder2.setSampleSize(),
+         * so a preview can be up to half this size. 0 for previews of the gifs' size.
+         */
+        public int inMaxPreviewSize = 0;
+
+        /**
+         * Gifs submitted and not decoded yet before submit() blocks.
+         */
+        public int inMaxPending = 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * What was read of a gif. Either error is set, or everything else is.
+     */
+    public static class Result {
+        /** Size, frame count, duration and loop count of the gif */
+        public GifDecoder2.GifInfo info;
+        /** Delay of each frame as found in the gif */
+        public int[] delaysMS;
+        public int previewWidth;
+        public int previewHeight;
+        /** First frame as ARGB pixels, rows of previewWidth one after the other */
+        public int[] preview;
+        /** Why the gif couldn't be read, null on success */
+        public Exception error;
+    }
+
+    private final ExecutorService mExecutor;
+    private final boolean mOwnsExecutor;
+    private final int mMaxPreviewSize;
+    private final Semaphore mPending;
+
+    /**
+     * Decode on a thread pool of one thread per core, shut down by close().
+     */
+    public GifBatchDecoder(Options opts) {
+        this(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            private int mThreadCount = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "GifBatchDecoder-" + (++mThreadCount));
+                t.setDaemon(true);
+                return t;
+            }
+        }), opts, true);
+    }
+
+    /**
+     * Decode on an executor of the caller, such as a ForkJoinPool, or one starting a virtual thread per task.
+     * The executor isn't shut down by close().
+     */
+    public GifBatchDecoder(ExecutorService executor, Options opts) {
+        this(executor, opts, false);
+    }
+
+    private GifBatchDecoder(ExecutorService executor, Options opts, boolean ownsExecutor) {
+        if(opts == null) {
+            opts = new Options();
+        }
+        mExecutor = executor;
+        mOwnsExecutor = ownsExecutor;
+        mMaxPreviewSize = Math.max(0, opts.inMaxPreviewSize);
+        mPending = new Semaphore(Math.max(1, opts.inMaxPending));
+    }
+
+    /**
+     * Decode a gif in memory. The data must not be modified until the result is ready.
+     * @return The result, which carries the error rather than throwing it if the gif can't be read
+     * @throws InterruptedException If interrupted while waiting for a gif to be done
+     */
+    public Future<Result> submit(final byte[] data) throws InterruptedException {
+        return submit(new Callable<GifByteSource>() {
+            @Override
+            public GifByteSource call() {
+                return GifByteSource.wrap(data);
+            }
+        });
+    }
+
+    /**
+     * Decode a gif file. The file is memory-mapped on the decoding thread.
+     * @return The result, which carries the error rather than throwing it if the gif can't be read
+     * @throws InterruptedException If interrupted while waiting for a gif to be done
+     */
+    public Future<Result> submit(final File file) throws InterruptedException {
+        return submit(new Callable<GifByteSource>() {
+            @Override
+            public GifByteSource call() throws IOException {
+                return GifByteSource.map(file);
+            }
+        });
+    }
+
+    private Future<Result> submit(final Callable<GifByteSource> source) throws InterruptedException {
+        mPending.acquire();
+        try {
+            return mExecutor.submit(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    try {
+                        return decode(source);
+                    }
+                    finally {
+                        mPending.release();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            mPending.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Stop the thread pool made by GifBatchDecoder(Options), after the gifs submitted are done.
+     */
+    public void close() {
+        if(mOwnsExecutor) {
+            mExecutor.shutdown();
+        }
+    }
+
+    private Result decode(Callable<GifByteSource> source) {
+        final Result result = new Result();
+        GifDecoder2 dec = null;
+        try {
+            final GifByteSource src = source.call();
+            final GifFrameIndex index = GifDecoder2.scan(src.duplicate());// Delays of all frames without decoding them
+            if(index.getFrameCount() == 0) {
+                throw new IOException("No frame");
+            }
+
+            dec = new GifDecoder2();
+            dec.setSampleSize(sampleSizeFor(index.info.width, index.info.height, mMaxPreviewSize));
+            if(!dec.open(src)) {
+                throw new IOException("Can't read the header");
+            }
+            final int width = dec.getWidth();
+            final int height = dec.getHeight();
+            final int[] preview = new int[width * height];
+            if(!dec.decodeNextFrame(new IntBufferFrameSink(preview, width))) {
+                throw new IOException("Can't read the first frame");
+            }
+
+            result.info = index.info;
+            result.delaysMS = index.getDelaysMS();
+            result.previewWidth = width;
+            result.previewHeight = height;
+            result.preview = preview;
+        }
+        catch (Exception e) {// Reported with the gif instead of failing the batch
+            result.error = e;
+        }
+        finally {
+            if(dec != null) {
+                dec.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The smallest sample size making both sides at most maxSize, 1 if maxSize is 0
+     */
+    static int sampleSizeFor(int width, int height, int maxSize) {
+        if(maxSize <= 0) {
+            return 1;
+        }
+        final int size = Math.max(width, height);
+        return Math.max(1, (size + maxSize - 1) / maxSize);
+    }
+}
@@ -0,0 +1,128 @@
+package com.kuoster.gifanimationdrawable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * int[] and short[] buffers given back by released gifs, used again by the next gifs of the same size
+ * instead of being left to the garbage collector. Bitmaps are pooled the same way by GifBitmapPool on Android.
+ * Buffers are kept in buckets by exact size, up to MAX_POOL_BYTES in total, the oldest are dropped first.
+ * The content of a buffer taken from the pool is undefined.
+ *
+ * All methods are thread-safe, buffers are taken on decoding threads and given back on the main thread.
+ */
+final class GifBufferPool {
+    private static final int MAX_POOL_BYTES = 4 * 1024 * 1024;
+
+    private static final HashMap<Integer, ArrayList<int[]>> sIntArrays = new HashMap<Integer, ArrayList<int[]>>();
+    private static final HashMap<Integer, ArrayList<short[]>> sShortArrays = new HashMap<Integer, ArrayList<short[]>>();
+    private static final LinkedList<Object> sPooled = new LinkedList<Object>();// Oldest first
+    private static int sPooledBytes = 0;
+
+    private GifBufferPool() {
+    }
+
+    /**
+     * @return An array of exactly length entries from the pool, or a new one
+     */
+    static int[] obtainIntArray(int length) {
+        synchronized(GifBufferPool.class) {
+            final int[] pooled = take(sIntArrays.get(length));
+            if(pooled != null) {
+                return pooled;
+            }
+        }
+        return new int[length];
+    }
+
+    /**
+     * @return An array of exactly length entries from the pool, or a new one
+     */
+    static short[] obtainShortArray(int length) {
+        synchronized(GifBufferPool.class) {
+            final short[] pooled = take(sShortArrays.get(length));
+            if(pooled != null) {
+                return pooled;
+            }
+        }
+        return new short[length];
+    }
+
+    /**
+     * Give an array to the pool. It must not be used by the caller any more.
+     */
+    static synchronized void release(int[] array) {
+        if(array == null) {
+            return;
+        }
+        ArrayList<int[]> bucket = sIntArrays.get(array.length);
+        if(bucket == null) {
+            bucket = new ArrayList<int[]>();
+            sIntArrays.put(array.length, bucket);
+        }
+        bucket.add(array);
+        add(array, 4 * array.length);
+    }
+
+    /**
+     * Give an array to the pool. It must not be used by the caller any more.
+     */
+    static synchronized void release(short[] array) {
+        if(array == null) {
+            return;
+        }
+        ArrayList<short[]> bucket = sShortArrays.get(array.length);
+        if(bucket == null) {
+            bucket = new ArrayList<short[]>();
+            sShortArrays.put(array.length, bucket);
+        }
+        bucket.add(array);
+        add(array, 2 * array.length);
+    }
+
+    /**
+     * Drop everything in the pool.
+     */
+    static synchronized void clear() {
+        while(!sPooled.isEmpty()) {
+            evictOldest();
+        }
+    }
+
+    private static <T> T take(ArrayList<T> bucket) {
+        if(bucket == null || bucket.isEmpty()) {
+            return null;
+        }
+        final T buffer = bucket.remove(bucket.size() - 1);// Most recently given back
+        sPooled.remove(buffer);
+        sPooledBytes -= byteCount(buffer);
+        return buffer;
+    }
+
+    private static void add(Object buffer, int bytes) {
+        sPooled.addLast(buffer);
+        sPooledBytes += bytes;
+        while(sPooledBytes > MAX_POOL_BYTES) {
+            evictOldest();
+        }
+    }
+
+    private static void evictOldest() {
+        final Object buffer = sPooled.removeFirst();
+        sPooledBytes -= byteCount(buffer);
+        if(buffer instanceof int[]) {
+            sIntArrays.get(((int[])buffer).length).remove(buffer);
+        }
+        else {
+            sShortArrays.get(((short[])buffer).length).remove(buffer);
+        }
+    }
+
+    private static int byteCount(Object buffer) {
+        if(buffer instanceof int[]) {
+            return 4 * ((int[])buffer).length;
+        }
+        return 2 * ((short[])buffer).length;
+    }
+}
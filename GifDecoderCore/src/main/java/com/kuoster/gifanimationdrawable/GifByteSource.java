@@ -0,0 +1,243 @@
+package com.kuoster.gifanimationdrawable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Gif data held in memory, read by the parser without a call into an InputStream per byte.
+ * Streams are read whole with a few bulk reads, files are memory-mapped.
+ * The data can then be re-read from any position.
+ * Data arriving piece by piece is held by a GrowingSource instead, see GifDecoder2.feed().
+ */
+abstract class GifByteSource {
+    private static final int READ_CHUNK_SIZE = 16 * 1024;
+
+    int mLimit;// Only grows, and only for a GrowingSource
+    int mPosition;
+
+    GifByteSource(int limit) {
+        this.mLimit = limit;
+        this.mPosition = 0;
+    }
+
+    /**
+     * @return Unsigned byte at an absolute index, the position is not changed
+     */
+    abstract int get(int index);
+
+    /**
+     * @return A source over the same data with its own position, starting at 0
+     */
+    abstract GifByteSource duplicate();
+
+    /**
+     * @return The backing array for direct indexing, or null if the data isn't in a byte[]
+     */
+    byte[] array() {
+        return null;
+    }
+
+    /**
+     * @return Next unsigned byte, or -1 at the end of the data
+     */
+    int readByte() {
+        if(mPosition >= mLimit) {
+            return -1;
+        }
+        return get(mPosition++);
+    }
+
+    int readUShort() {
+        // Little-endian
+        int ret = readByte();
+        ret += readByte() * 0x100;
+        return ret;
+    }
+
+    void skip(int n) {
+        mPosition = Math.min(mLimit, mPosition + n);
+    }
+
+    int position() {
+        return mPosition;
+    }
+
+    void seek(int position) {
+        mPosition = Math.max(0, Math.min(mLimit, position));
+    }
+
+    int limit() {
+        return mLimit;
+    }
+
+    static GifByteSource wrap(byte[] data) {
+        return new ArraySource(data, data.length);
+    }
+
+    static GifByteSource wrap(ByteBuffer buffer) {
+        if(buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0) {
+            return new ArraySource(buffer.array(), buffer.limit());
+        }
+        return new BufferSource(buffer.slice());
+    }
+
+    /**
+     * Read a whole stream into memory with bulk reads. The stream is not closed.
+     */
+    static GifByteSource read(InputStream is) throws IOException {
+        byte[] data = new byte[Math.max(is.available(), READ_CHUNK_SIZE)];
+        int length = 0;
+        int bytesRead;
+        while((bytesRead = is.read(data, length, data.length - length)) >= 0) {
+            length += bytesRead;
+            if(length == data.length) {
+                byte[] grown = new byte[data.length * 2];
+                System.arraycopy(data, 0, grown, 0, length);
+                data = grown;
+            }
+        }
+        return new ArraySource(data, length);
+    }
+
+    /**
+     * Memory-map a whole file. Pages are read by the OS when touched, nothing is copied
+     * onto the heap, and reading the data again costs no I/O while the pages are cached.
+     */
+    static GifByteSource map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+            if(size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            return new BufferSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private static final class ArraySource extends GifByteSource {
+        private final byte[] mData;
+
+        ArraySource(byte[] data, int limit) {
+            super(limit);
+            this.mData = data;
+        }
+
+        @Override
+        int get(int index) {
+            return ((int)mData[index]) & 0xff;
+        }
+
+        @Override
+        int readByte() {
+            if(mPosition >= mLimit) {
+                return -1;
+            }
+            return ((int)mData[mPosition++]) & 0xff;
+        }
+
+        @Override
+        GifByteSource duplicate() {
+            return new ArraySource(mData, mLimit);
+        }
+
+        @Override
+        byte[] array() {
+            return mData;
+        }
+    }
+
+    /**
+     * Data given piece by piece as it arrives, see append().
+     * Bytes before the position are dropped when room is needed for more data, so only the data not parsed yet is kept
+     * rather than the whole gif. Positions are relative to the data kept: don't hold on to one across append().
+     */
+    static final class GrowingSource extends GifByteSource {
+        private byte[] mData = new byte[READ_CHUNK_SIZE];
+
+        GrowingSource() {
+            super(0);
+        }
+
+        /**
+         * Add data after the data already there. The data is copied.
+         */
+        void append(byte[] data, int offset, int length) {
+            if(mLimit + length > mData.length) {
+                // Drop what has been read before growing
+                System.arraycopy(mData, mPosition, mData, 0, mLimit - mPosition);
+                mLimit -= mPosition;
+                mPosition = 0;
+                if(mLimit + length > mData.length) {// Not Arrays.copyOf(), which Android only has from API 9
+                    final byte[] grown = new byte[Math.max(mData.length * 2, mLimit + length)];
+                    System.arraycopy(mData, 0, grown, 0, mLimit);
+                    mData = grown;
+                }
+            }
+            System.arraycopy(data, offset, mData, mLimit, length);
+            mLimit += length;
+        }
+
+        /**
+         * @return Bytes after the position
+         */
+        int available() {
+            return mLimit - mPosition;
+        }
+
+        @Override
+        int get(int index) {
+            return ((int)mData[index]) & 0xff;
+        }
+
+        @Override
+        int readByte() {
+            if(mPosition >= mLimit) {
+                return -1;
+            }
+            return ((int)mData[mPosition++]) & 0xff;
+        }
+
+        /**
+         * @return A source over a copy of the data kept so far, which isn't moved by append()
+         */
+        @Override
+        GifByteSource duplicate() {
+            final byte[] copy = new byte[mLimit];
+            System.arraycopy(mData, 0, copy, 0, mLimit);
+            return new ArraySource(copy, mLimit);
+        }
+
+        @Override
+        byte[] array() {
+            return mData;
+        }
+    }
+
+    private static final class BufferSource extends GifByteSource {
+        private final ByteBuffer mBuffer;
+
+        BufferSource(ByteBuffer buffer) {
+            super(buffer.limit());
+            this.mBuffer = buffer;
+        }
+
+        @Override
+        int get(int index) {
+            return ((int)mBuffer.get(index)) & 0xff;
+        }
+
+        @Override
+        GifByteSource duplicate() {
+            return new BufferSource(mBuffer.duplicate());
+        }
+    }
+}
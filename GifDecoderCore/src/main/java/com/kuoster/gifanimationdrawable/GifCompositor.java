@@ -0,0 +1,331 @@
+package com.kuoster.gifanimationdrawable;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the logical screen of a gif in a single array and draws image blocks on it.
+ * Only the rectangle of an image block is touched, by drawing and by disposal,
+ * so the cost of a frame depends on the area that changed rather than on the canvas size.
+ * Pixels are kept in the format of the output sink, see create().
+ */
+abstract class GifCompositor {
+    static final int NO_TRANSPARENCY_INDEX = -1;
+
+    private static final int[] INTERLACE_START_ROWS = {0, 4, 2, 1};
+    private static final int[] INTERLACE_STEP_ROWS = {8, 8, 4, 2};
+
+    final int width;
+    final int height;
+
+    // Saved rectangle for RESTORE_TO_PREVIOUS, reused and grown to the largest rectangle saved
+    private Object mSaved;
+    private int mSavedLength;
+    private int mSavedX;
+    private int mSavedY;
+    private int mSavedWidth;
+    private int mSavedHeight;// 0 if nothing is saved
+
+    GifCompositor(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @param format ARGB_8888, or RGB_565 for gifs without transparency. Transparent pixels are black with RGB_565.
+     * @return A transparent canvas of width x height
+     */
+    static GifCompositor create(int width, int height, GifFrameSink.PixelFormat format) {
+        if(format == GifFrameSink.PixelFormat.RGB_565) {
+            return new Rgb565(width, height);
+        }
+        return new Argb(width, height);
+    }
+
+    /**
+     * Clear the canvas to transparent, as before the first frame.
+     */
+    void reset() {
+        clear();
+        mSavedHeight = 0;
+    }
+
+    /**
+     * Write the canvas into a sink of width x height and of the format given to create().
+     */
+    abstract void writeTo(GifFrameSink sink);
+
+    /**
+     * Write a rectangle of the canvas into a sink. Some formats write the whole canvas.
+     */
+    abstract void writeTo(GifFrameSink sink, int left, int top, int right, int bottom);
+
+    /**
+     * Give the buffers to GifBufferPool. The compositor must not be used afterwards.
+     */
+    void release() {
+        releaseArray(pixelArray());
+        releaseArray(mSaved);
+        mSaved = null;
+    }
+
+    abstract void clear();
+
+    abstract Object pixelArray();
+
+    abstract Object obtainArray(int length);
+
+    abstract void releaseArray(Object array);
+
+    abstract void drawRow(byte[] indices, int indexCount, int srcOffset, int dstOffset, int count, GifDecoder2.Palette palette);
+
+    abstract void fillRow(int offset, int count, int color);
+
+    /**
+     * Save a rectangle of the canvas so it can be put back by restore().
+     * Only the rectangle is copied, not the whole canvas.
+     */
+    void save(int x, int y, int w, int h) {
+        final int saveWidth = Math.max(0, Math.min(w, width - x));
+        // Nothing to save for a rectangle outside the canvas, its rows would start past the end of the canvas
+        final int saveHeight = (saveWidth > 0) ? Math.max(0, Math.min(h, height - y)) : 0;
+        final int size = saveWidth * saveHeight;
+        if(mSaved == null || mSavedLength < size) {
+            releaseArray(mSaved);
+            mSaved = obtainArray(size);
+            mSavedLength = size;
+        }
+        final Object pixels = pixelArray();
+        for(int row = 0; row < saveHeight; ++row) {
+            System.arraycopy(pixels, (y + row) * width + x, mSaved, row * saveWidth, saveWidth);
+        }
+        mSavedX = x;
+        mSavedY = y;
+        mSavedWidth = saveWidth;
+        mSavedHeight = saveHeight;
+    }
+
+    /**
+     * Put back the rectangle saved by save(). Does nothing if nothing is saved.
+     */
+    void restore() {
+        final Object pixels = pixelArray();
+        for(int row = 0; row < mSavedHeight; ++row) {
+            System.arraycopy(mSaved, row * mSavedWidth, pixels, (mSavedY + row) * width + mSavedX, mSavedWidth);
+        }
+        mSavedHeight = 0;
+    }
+
+    /**
+     * Draw a frame's image block, saving what it covers first if it is to be restored by disposeFrame().
+     */
+    void drawFrame(GifDecoder2.IndexedFrame frame) {
+        if(frame.disposalMethod == GifDecoder2.GraphicControlExtension.RESTORE_TO_PREVIOUS) {
+            save(frame.x, frame.y, frame.width, frame.height);// The frame only covers its rectangle, so that's all that has to be put back
+        }
+        drawImage(frame.indices, frame.indexCount, frame.x, frame.y, frame.width, frame.height, frame.interlaced, frame.palette);
+    }
+
+    /**
+     * Leave the background for the next frame on the canvas, after drawFrame() and after the frame has been shown.
+     * Only the frame's rectangle can change.
+     */
+    void disposeFrame(GifDecoder2.IndexedFrame frame) {
+        switch (frame.disposalMethod) {
+            case GifDecoder2.GraphicControlExtension.RESTORE_BG_COLOR:
+                fill(frame.x, frame.y, frame.width, frame.height, frame.backgroundColor);
+                break;
+            case GifDecoder2.GraphicControlExtension.RESTORE_TO_PREVIOUS:
+                restore();
+                break;
+            // Do nothing with NO_ACTION and DO_NOT_DISPOSE, the frame stays on the canvas
+        }
+    }
+
+    /**
+     * Draw an image block. Transparent pixels are skipped, the rest is written with its color.
+     * @param indices Color indices of the image block in decoding order
+     * @param indexCount Number of indices decoded, missing pixels at the end are not drawn
+     * @param x Left of the image block on the canvas
+     * @param y Top of the image block on the canvas
+     * @param w Image block width
+     * @param h Image block height
+     * @param interlaced True if the rows of indices are in interlaced order
+     * @param palette Colors of the indices, pixels of its transparent color are skipped
+     */
+    void drawImage(byte[] indices, int indexCount, int x, int y, int w, int h, boolean interlaced, GifDecoder2.Palette palette) {
+        // Clip to the canvas
+        final int drawWidth = Math.min(w, width - x);
+        if(drawWidth <= 0) {
+            return;
+        }
+        if(!interlaced) {
+            final int rows = Math.min(h, height - y);
+            for(int row = 0; row < rows; ++row) {
+                drawRow(indices, indexCount, row * w, (y + row) * width + x, drawWidth, palette);
+            }
+        }
+        else {
+            int srcRow = 0;
+            for(int pass = 0; pass < 4; ++pass) {
+                for(int row = INTERLACE_START_ROWS[pass]; row < h; row += INTERLACE_STEP_ROWS[pass]) {
+                    if(y + row < height) {
+                        drawRow(indices, indexCount, srcRow * w, (y + row) * width + x, drawWidth, palette);
+                    }
+                    srcRow++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fill a rectangle with one color, clipped to the canvas.
+     */
+    void fill(int x, int y, int w, int h, int color) {
+        final int right = Math.min(x + w, width);
+        final int bottom = Math.min(y + h, height);
+        if(right <= x) {
+            return;
+        }
+        for(int row = y; row < bottom; ++row) {
+            fillRow(row * width + x, right - x, color);
+        }
+    }
+
+    /**
+     * Canvas of ARGB ints, for ARGB_8888 output.
+     */
+    private static final class Argb extends GifCompositor {
+        private final int[] mPixels;
+
+        Argb(int width, int height) {
+            super(width, height);
+            mPixels = GifBufferPool.obtainIntArray(width * height);
+            reset();
+        }
+
+        @Override
+        void writeTo(GifFrameSink sink) {
+            sink.setPixels(mPixels, 0, width, 0, 0, width, height);
+        }
+
+        @Override
+        void writeTo(GifFrameSink sink, int left, int top, int right, int bottom) {
+            sink.setPixels(mPixels, top * width + left, width, left, top, right - left, bottom - top);
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(mPixels, 0);
+        }
+
+        @Override
+        Object pixelArray() {
+            return mPixels;
+        }
+
+        @Override
+        Object obtainArray(int length) {
+            return GifBufferPool.obtainIntArray(length);
+        }
+
+        @Override
+        void releaseArray(Object array) {
+            GifBufferPool.release((int[])array);
+        }
+
+        @Override
+        void drawRow(byte[] indices, int indexCount, int srcOffset, int dstOffset, int count, GifDecoder2.Palette palette) {
+            final int[] dst = mPixels;
+            final int[] colors = palette.colors;
+            final int transparencyIndex = palette.transparencyIndex;
+            count = Math.min(count, indexCount - srcOffset);
+            if(transparencyIndex == NO_TRANSPARENCY_INDEX) {
+                for(int i = 0; i < count; ++i) {
+                    dst[dstOffset + i] = colors[indices[srcOffset + i] & 0xff];
+                }
+            }
+            else {
+                for(int i = 0; i < count; ++i) {
+                    final int index = indices[srcOffset + i] & 0xff;
+                    if(index != transparencyIndex) {
+                        dst[dstOffset + i] = colors[index];
+                    }
+                }
+            }
+        }
+
+        @Override
+        void fillRow(int offset, int count, int color) {
+            Arrays.fill(mPixels, offset, offset + count, color);
+        }
+    }
+
+    /**
+     * Canvas of 16-bit RGB 565 pixels, for RGB_565 output. Half the memory and the copying of Argb.
+     */
+    private static final class Rgb565 extends GifCompositor {
+        private final short[] mPixels;
+
+        Rgb565(int width, int height) {
+            super(width, height);
+            mPixels = GifBufferPool.obtainShortArray(width * height);
+            reset();
+        }
+
+        @Override
+        void writeTo(GifFrameSink sink) {
+            sink.setPixels565(mPixels, width, height);
+        }
+
+        @Override
+        void writeTo(GifFrameSink sink, int left, int top, int right, int bottom) {
+            writeTo(sink);// Copied as is, cheaper than converting a rectangle from ints
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(mPixels, (short)0);
+        }
+
+        @Override
+        Object pixelArray() {
+            return mPixels;
+        }
+
+        @Override
+        Object obtainArray(int length) {
+            return GifBufferPool.obtainShortArray(length);
+        }
+
+        @Override
+        void releaseArray(Object array) {
+            GifBufferPool.release((short[])array);
+        }
+
+        @Override
+        void drawRow(byte[] indices, int indexCount, int srcOffset, int dstOffset, int count, GifDecoder2.Palette palette) {
+            final short[] dst = mPixels;
+            final short[] colors565 = palette.colors565();
+            final int transparencyIndex = palette.transparencyIndex;
+            count = Math.min(count, indexCount - srcOffset);
+            if(transparencyIndex == NO_TRANSPARENCY_INDEX) {
+                for(int i = 0; i < count; ++i) {
+                    dst[dstOffset + i] = colors565[indices[srcOffset + i] & 0xff];
+                }
+            }
+            else {
+                for(int i = 0; i < count; ++i) {
+                    final int index = indices[srcOffset + i] & 0xff;
+                    if(index != transparencyIndex) {
+                        dst[dstOffset + i] = colors565[index];
+                    }
+                }
+            }
+        }
+
+        @Override
+        void fillRow(int offset, int count, int color) {
+            Arrays.fill(mPixels, offset, offset + count, GifDecoder2.Palette.toRgb565(color));
+        }
+    }
+}
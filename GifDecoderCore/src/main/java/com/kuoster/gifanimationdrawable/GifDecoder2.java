@@ -0,0 +1,1592 @@
+package com.kuoster.gifanimationdrawable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class GifDecoder2 {
+    private static final Logger LOG = Logger.getLogger(GifDecoder2.class.getName());
+    private static final boolean SHOW_GIF_INFO = false;
+
+    private static final int SENTINEL_IMAGE = 0x2c;
+    private static final int SENTINEL_EXTENSION_BLOCK = 0x21;
+    private static final int SENTINEL_TRAILER = 0x3b;
+
+    /** Color tables always have this many entries, so any index can be looked up */
+    private static final int MAX_COLORS = 256;
+
+    /** Fully transparent, the color of transparent pixels */
+    private static final int TRANSPARENT = 0;
+    private static final int BLACK = 0xff000000;
+
+    /** Images decompressed ahead of the one being composited by load() */
+    private static final int PIPELINE_DEPTH = 2;
+    /** Pipelined loads running at once, a load that finds them all running doesn't use the pipeline */
+    private static final int MAX_PARSE_THREADS = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+    private static final Semaphore sParseThreads = new Semaphore(MAX_PARSE_THREADS);// Taken by a load() until its parser is done
+    private static ExecutorService sParseExecutor;// Parsing threads of load(), one per pipelined load() running
+
+    /**
+     * A decoded gif frame, with the sink it was composited into and frame duration.
+     * With setKeepIndexedFrames(true) the frame is kept as image instead of sink.
+     */
+    private static class Frame {
+        GifFrameSink sink;
+        IndexedFrame image;
+        int duration;
+
+        Frame(GifFrameSink sink, int duration) {
+            this.sink = sink;
+            this.duration = duration;
+        }
+
+        Frame(IndexedFrame image, int duration) {
+            this.image = image;
+            this.duration = duration;
+        }
+    }
+
+    /**
+     * An image block as color indices, with what is needed to draw it on the canvas later.
+     * It takes a byte per pixel of its own rectangle, instead of 4 bytes per pixel of the canvas for a bitmap.
+     */
+    static class IndexedFrame {
+        int x;
+        int y;
+        int width;
+        int height;
+        boolean interlaced;
+        byte[] indices;// Rows in decoding order, see interlaced
+        int indexCount;// Number of indices decoded, less than width * height if the data was cut short
+        Palette palette;// Shared with other frames using the same table and transparent color
+        int disposalMethod;// One of GraphicControlExtension's disposal methods
+        int backgroundColor;// Used by RESTORE_BG_COLOR
+        int delayMS;
+
+        // Buffers indices points into when the image is reused for every image block, see readImageBlock()
+        byte[] decodeBuffer;
+        byte[] sampleBuffer;
+
+        // Cost of reading the image, set by readNextFrame() only when there is a metrics listener
+        long readNanos;
+        int bytesRead;
+
+        /**
+         * @return A copy that doesn't share the decoder's index buffer
+         */
+        IndexedFrame copy() {
+            IndexedFrame ret = new IndexedFrame();
+            ret.x = x;
+            ret.y = y;
+            ret.width = width;
+            ret.height = height;
+            ret.interlaced = interlaced;
+            ret.indices = new byte[indexCount];// Not Arrays.copyOf(), which Android only has from API 9
+            System.arraycopy(indices, 0, ret.indices, 0, indexCount);
+            ret.indexCount = indexCount;
+            ret.palette = palette;
+            ret.disposalMethod = disposalMethod;
+            ret.backgroundColor = backgroundColor;
+            ret.delayMS = delayMS;
+            return ret;
+        }
+    }
+
+    /**
+     * A color table resolved for one transparent color. It is never modified once made,
+     * so frames and decoders on other threads can share it.
+     * The transparent color is 0, transparent black, which is the same with premultiplied alpha.
+     */
+    static final class Palette {
+        final int[] colors;// MAX_COLORS ARGB colors, indices past the table are black
+        final int transparencyIndex;// GifCompositor.NO_TRANSPARENCY_INDEX if no color is transparent
+        private volatile short[] mColors565;
+
+        Palette(int[] tableColors, int transparencyIndex) {
+            this.colors = new int[MAX_COLORS];// Not Arrays.copyOf(), which Android only has from API 9
+            System.arraycopy(tableColors, 0, this.colors, 0, Math.min(tableColors.length, MAX_COLORS));
+            this.transparencyIndex = transparencyIndex;
+            if(transparencyIndex != GifCompositor.NO_TRANSPARENCY_INDEX) {
+                this.colors[transparencyIndex] = TRANSPARENT;
+            }
+        }
+
+        /**
+         * @return True if this palette was made from these table colors and transparent color
+         */
+        boolean isFor(int[] tableColors, int transparencyIndex) {
+            if(transparencyIndex != this.transparencyIndex) {
+                return false;
+            }
+            for(int i = 0; i < MAX_COLORS; ++i) {
+                if(i != transparencyIndex && tableColors[i] != colors[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return The colors as RGB 565, made on first use
+         */
+        short[] colors565() {
+            short[] ret = mColors565;
+            if(ret == null) {// Made again if two threads get here at once, the result is the same
+                ret = new short[MAX_COLORS];
+                for(int i = 0; i < MAX_COLORS; ++i) {
+                    ret[i] = toRgb565(colors[i]);
+                }
+                mColors565 = ret;
+            }
+            return ret;
+        }
+
+        static short toRgb565(int color) {
+            return (short)(((color >> 8) & 0xf800) | ((color >> 5) & 0x07e0) | ((color >> 3) & 0x001f));
+        }
+    }
+
+    /**
+     * Gif properties that can be read without decoding any pixels, see probe().
+     */
+    public static class GifInfo {
+        /** loopCount when the animation repeats forever */
+        public static final int LOOP_FOREVER = 0;
+        /** loopCount when there is no NETSCAPE2.0 extension, the animation is played once */
+        public static final int NO_LOOP = -1;
+
+        public int width;
+        public int height;
+        public int frameCount;
+        public int durationMS;
+        /** Times the animation repeats after being played once, LOOP_FOREVER or NO_LOOP */
+        public int loopCount = NO_LOOP;
+        /** True if no frame has a transparent pixel, so frames can be decoded as RGB_565 */
+        public boolean opaque;
+    }
+
+    private static class LogicalScreenDescriptor {
+        int width;
+        int height;
+        /** Global Color Table Size */
+        int gctSize;
+        boolean gctExists;
+        boolean gctSorted;
+        int backgroundIndex;
+        int defaultPixelAspectRatio;// w/h // NOTE Currently not used in this class (assume 1)
+
+        int colorResolution;// Not used
+
+        private static final int SIZE = 7;
+
+        LogicalScreenDescriptor(GifByteSource src) {
+            if(src.limit() - src.position() < SIZE) {// Sizes would be read from past the end as negative
+                throw new RuntimeException("Truncated gif file.");
+            }
+            this.width = src.readUShort();
+            this.height = src.readUShort();
+            int flags = src.readByte();
+            this.backgroundIndex = src.readByte();
+            this.defaultPixelAspectRatio = src.readByte();
+
+            this.gctExists = ((flags & 0x80) == 0x80);
+            this.colorResolution = (flags & 0x70) >> 4;
+            this.gctSorted = ((flags & 0x08) == 0x08);
+            this.gctSize = (int)Math.pow(2, ((flags & 0x07)  + 1));// GCT Size
+
+            if(SHOW_GIF_INFO) {
+                LOG.info("GIF Logical Screen Descriptor");
+                LOG.info("Width:  " + String.valueOf(this.width));
+                LOG.info("Height: " + String.valueOf(this.height));
+                LOG.info("GCT Exists: " + String.valueOf(this.gctExists));
+                LOG.info("Color res:  " + String.valueOf(this.colorResolution));
+                LOG.info("GCT Sorted: " + String.valueOf(this.gctSorted));
+                LOG.info("GCT Size:   " + String.valueOf(this.gctSize));
+                LOG.info("Background Color Index: " + String.valueOf(this.backgroundIndex));
+            }
+        }
+    }
+
+    private static class ColorTable {
+        int[] colors;
+        int size;// Number of colors, colors may be larger when the table is reused
+
+        ColorTable() {
+        }
+
+        public ColorTable(GifByteSource src, int ctSize) {
+            read(src, ctSize);
+        }
+
+        /**
+         * Read ctSize colors, reusing the colors array.
+         * The array always has MAX_COLORS entries, indices past ctSize are black.
+         */
+        void read(GifByteSource src, int ctSize) {
+            this.size = ctSize;
+            if(this.colors == null) {
+                this.colors = new int[MAX_COLORS];
+            }
+            for(int i = 0; i < ctSize; ++i) {
+                this.colors[i] = rgb(src.readByte(), src.readByte(), src.readByte());
+                if(SHOW_GIF_INFO) {
+                    LOG.fine(String.format("Color %d: %x", i, this.colors[i]));
+                }
+            }
+            Arrays.fill(this.colors, ctSize, MAX_COLORS, BLACK);
+        }
+    }
+
+    static class GraphicControlExtension {
+        public static final int NO_ACTION = 0;
+        public static final int DO_NOT_DISPOSE = 1;
+        public static final int RESTORE_BG_COLOR = 2;
+        public static final int RESTORE_TO_PREVIOUS = 3;
+
+        int disposalMethod;
+        boolean userInput;
+        boolean transparencyFlag;
+        int delayMS;//millisecond
+        int transparencyIndex;
+
+        GraphicControlExtension() {
+        }
+
+        GraphicControlExtension(GifByteSource src) {
+            read(src);
+        }
+
+        void read(GifByteSource src) {
+            int blockSize = src.readByte();
+            int flags = src.readByte();
+
+            this.disposalMethod = ((flags & 0x1c) >> 2);
+            this.userInput = ((flags & 0x02) == 0x02);
+            this.transparencyFlag = ((flags & 0x01) == 0x01);
+            this.delayMS = src.readUShort() * 10;// Convert 1/100s to ms
+            this.transparencyIndex = src.readByte();
+
+            // Skip rest of subblocks in GCE, they shouldn't be here
+            skipBlock(src);
+        }
+    }
+
+    /**
+     * Notified on the decoding thread each time a frame has been added by load() or feed().
+     * The frame can be shown right away with getFrameSink(index), before the rest of the gif has been decoded.
+     */
+    public interface OnFrameDecodedListener {
+        void onFrameDecoded(GifDecoder2 decoder, int index);
+    }
+
+    /**
+     * Notified on the decoding thread about the cost of every frame read, see setMetricsListener().
+     * Frames are reported in order as they are decoded, by load() before they are added,
+     * and frames skipped by seekTo() as they are drawn.
+     */
+    public interface MetricsListener {
+        /**
+         * @param index Frame read
+         * @param lzwNanos Time reading the frame's blocks, most of it decompressing the image
+         * @param compositeNanos Time drawing the image on the canvas and writing the frame into its sink, 0 for frames kept as color indices
+         * @param bytesRead Gif data read for the frame, extensions included
+         * @param pixelsWritten Pixels written into the frame's sink, 0 if the frame was kept as color indices or skipped
+         */
+        void onFrameMetrics(GifDecoder2 decoder, int index, long lzwNanos, long compositeNanos, int bytesRead, int pixelsWritten);
+    }
+
+    private Vector<Frame> mFrames;
+    private GifCompositor mCompositor;/** The canvas frames are drawn on. Between frames it holds the background for the next frame, constructed from last frame's data and disposal method */
+    private LogicalScreenDescriptor mLSD;
+    private ColorTable mGCT;
+    private GraphicControlExtension mGCE;
+    private int mLoopCount;// From the NETSCAPE2.0 extension, see GifInfo.loopCount
+
+    // Streaming state, see open() and decodeNextFrame()
+    private GifByteSource mSource;
+    private int mBodyStart;// Position of the first block after the header
+    private int mStreamFrameIndex;// Frame returned by the next decodeNextFrame()
+    private GifFrameIndex mFrameIndex;// Scanned on the first seekTo() unless given to setFrameIndex()
+    private int mFrameDelayMS;// Duration of the last composited frame
+    private OnFrameDecodedListener mOnFrameDecodedListener;
+    private MetricsListener mMetricsListener;// Nothing is timed without one
+
+    // Data given piece by piece, see feed()
+    private static final int FEED_HEADER = 0;
+    private static final int FEED_BLOCKS = 1;// At the start of a block
+    private static final int FEED_IMAGE_DATA = 2;// In the image data of mImage, decoded by mCodeBook as it arrives
+    private static final int FEED_DONE = 3;// Trailer read
+    private GifByteSource.GrowingSource mFeedSource;
+    private int mFeedState;
+    private long mFeedNanos;// Time and data taken by the frame being fed so far, with a metrics listener
+    private int mFeedBytes;
+
+    // Scratch buffers reused for every image block, so steady state decoding doesn't allocate
+    private final LZWDictionary mCodeBook = new LZWDictionary();
+    private final ColorTable mLCT = new ColorTable();
+    private final GraphicControlExtension mGCEBuffer = new GraphicControlExtension();
+    private final IndexedFrame mImage = new IndexedFrame();// Last image block read, reused for every image block
+
+    private boolean mKeepIndexedFrames;
+    private boolean mPipelined;
+    private int mSampleSize = 1;
+    private GifFrameSink.PixelFormat mPixelFormat = GifFrameSink.PixelFormat.ARGB_8888;
+    private GifFrameSink.Factory mSinkFactory = IntBufferFrameSink.FACTORY;
+    private final Palette[] mGCTPalettes = new Palette[MAX_COLORS + 1];// By transparency index + 1, made on first use
+    private Palette mLCTPalette;// Palette of the last LCT, used again while the following LCTs are the same
+
+    public void load(InputStream is) {
+        GifByteSource src = readSource(is);
+        if(src != null) {
+            load(src);
+        }
+    }
+
+    public void load(byte[] data) {
+        load(GifByteSource.wrap(data));
+    }
+
+    /**
+     * Load a gif file. The file is memory-mapped instead of being read onto the heap.
+     */
+    public void load(File file) {
+        GifByteSource src = mapSource(file);
+        if(src != null) {
+            load(src);
+        }
+    }
+
+    void load(GifByteSource src) {
+        init();
+
+        if(src != null) {
+            if(readHeader(src)) {
+                readBody(src);
+                releaseCompositor();// All frames are out, the canvas isn't needed any more
+                if(getFrameCount() <= 0) {
+                    //Error, there must be at least one frame.
+                    LOG.severe("load() frame count <= 0");
+                }
+                else {
+                    LOG.fine(String.format("load() frame count = %d", getFrameCount()));
+                }
+            }
+            else {
+                LOG.fine("load() readHeader() failed");
+            }
+        }
+        else {
+            throw new NullPointerException("No data to load.");
+        }
+    }
+
+    /**
+     * Read a whole stream into memory and close it.
+     * @return The data, or null if reading failed
+     */
+    static GifByteSource readSource(InputStream is) {
+        if(is == null) {
+            throw new NullPointerException("No data to load.");
+        }
+        GifByteSource src = null;
+        try {
+            src = GifByteSource.read(is);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error reading gif stream", e);
+        }
+
+        try {
+            is.close();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error closing gif stream", e);
+        }
+        return src;
+    }
+
+    /**
+     * Memory-map a gif file.
+     * @return The data, or null if mapping failed
+     */
+    static GifByteSource mapSource(File file) {
+        try {
+            return GifByteSource.map(file);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error mapping gif file " + file, e);
+        }
+        return null;
+    }
+
+    /**
+     * Read the size, frame count, total duration and loop count of a gif without decoding any pixels.
+     * Color tables and image data are skipped.
+     * @param is Gif data, closed when done
+     * @return Gif properties
+     */
+    public static GifInfo probe(InputStream is) {
+        GifByteSource src = readSource(is);
+        return (src != null) ? probe(src) : new GifInfo();
+    }
+
+    static GifInfo probe(GifByteSource src) {
+        return scan(src).info;
+    }
+
+    private static final int HEADER_SIZE = 13;// Signature and logical screen descriptor
+
+    /**
+     * Read the size of a gif from its header. Unlike probe(), only the first 13 bytes are read,
+     * so it costs one small read however large the gif is.
+     * @param is Gif data, closed when done
+     * @return Gif properties with only width and height set, 0 x 0 if the header couldn't be read
+     */
+    public static GifInfo probeSize(InputStream is) {
+        if(is == null) {
+            throw new NullPointerException("No data to load.");
+        }
+        GifInfo info = new GifInfo();
+        try {
+            final byte[] header = new byte[HEADER_SIZE];
+            int length = 0;
+            int bytesRead;
+            while(length < HEADER_SIZE && (bytesRead = is.read(header, length, HEADER_SIZE - length)) >= 0) {
+                length += bytesRead;
+            }
+            final GifByteSource src = GifByteSource.wrap(ByteBuffer.wrap(header, 0, length));
+            readSignature(src);
+            LogicalScreenDescriptor lsd = new LogicalScreenDescriptor(src);
+            info.width = lsd.width;
+            info.height = lsd.height;
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error reading gif header", e);
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Error reading gif header", e);
+        }
+
+        try {
+            is.close();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error closing gif stream", e);
+        }
+        return info;
+    }
+
+    /**
+     * Find the position, rectangle and disposal of every frame without decoding any pixels.
+     * Color tables and image data are skipped, as by probe().
+     * @param src Gif data, read from its current position
+     * @return The frames, with the gif properties in GifFrameIndex.info
+     */
+    static GifFrameIndex scan(GifByteSource src) {
+        GifInfo info = new GifInfo();
+        final int dataLength = src.limit();
+        readSignature(src);
+        LogicalScreenDescriptor lsd = new LogicalScreenDescriptor(src);
+        info.width = lsd.width;
+        info.height = lsd.height;
+        final int gctStart = src.position();
+        final int gctSize = lsd.gctExists ? lsd.gctSize : 0;
+        src.skip(3 * gctSize);
+
+        ArrayList<GifFrameIndex.Entry> frames = new ArrayList<GifFrameIndex.Entry>();
+        GraphicControlExtension gce = null;// GCE of the next image
+        boolean hasTransparentColor = false;
+        int frameStart = src.position();
+        int sentinel;
+        do {
+            sentinel = src.readByte();
+            switch (sentinel) {
+                case SENTINEL_IMAGE:
+                    if(!hasImageDescriptor(src, src.position())) {// Cut short, the data ends here
+                        sentinel = -1;
+                        break;
+                    }
+                    final GifFrameIndex.Entry frame = new GifFrameIndex.Entry();
+                    frame.offset = frameStart;
+                    frame.x = src.readUShort();
+                    frame.y = src.readUShort();
+                    frame.width = src.readUShort();
+                    frame.height = src.readUShort();
+                    final int flags = src.readByte();
+                    int tableStart = gctStart;
+                    int tableSize = gctSize;
+                    if((flags & 0x80) == 0x80) {// Has LCT
+                        tableStart = src.position();
+                        tableSize = (int)Math.pow(2, ((flags & 0x07)  + 1));
+                        src.skip(3 * tableSize);
+                    }
+                    src.readByte();// Root size
+                    frame.dataOffset = src.position();
+                    skipBlock(src);
+
+                    if(gce != null) {
+                        frame.disposalMethod = gce.disposalMethod;
+                        frame.transparent = gce.transparencyFlag;
+                        frame.delayMS = gce.delayMS;
+                    }
+                    // The color readImageBlock() gives IndexedFrame.backgroundColor
+                    final int backgroundStart = tableStart + 3 * lsd.backgroundIndex;
+                    if(frame.transparent && gce.transparencyIndex == lsd.backgroundIndex) {
+                        frame.backgroundColor = TRANSPARENT;
+                    }
+                    else if(lsd.backgroundIndex < tableSize && backgroundStart + 2 < dataLength) {
+                        frame.backgroundColor = rgb(src.get(backgroundStart), src.get(backgroundStart + 1), src.get(backgroundStart + 2));
+                    }
+                    else {
+                        frame.backgroundColor = BLACK;
+                    }
+                    hasTransparentColor |= frame.transparent;
+                    frame.startTimeMS = info.durationMS;
+                    info.durationMS += frame.delayMS;
+                    frames.add(frame);
+                    gce = null;
+                    frameStart = src.position();
+                    break;
+                case SENTINEL_EXTENSION_BLOCK:
+                    final int extType = src.readByte();
+                    if(extType == EXTENSION_GRAPHIC_CONTROL) {
+                        gce = new GraphicControlExtension(src);
+                    }
+                    else if(extType == EXTENSION_APPLICATION) {
+                        final int loopCount = readApplicationExtension(src);
+                        if(loopCount != GifInfo.NO_LOOP) {
+                            info.loopCount = loopCount;
+                        }
+                    }
+                    else {
+                        skipBlock(src);
+                    }
+                    break;
+                default:// Trailer, unknown block or end of stream
+            }
+        } while(sentinel != SENTINEL_TRAILER && sentinel != -1);
+
+        info.frameCount = frames.size();
+        final GifFrameIndex.Entry[] entries = frames.toArray(new GifFrameIndex.Entry[frames.size()]);
+        GifFrameIndex index = new GifFrameIndex(info, dataLength, GifFrameIndex.checksum(src, entries), entries);
+        // The canvas starts transparent, the first image has to cover it and stay
+        info.opaque = !hasTransparentColor && info.frameCount > 0 && index.coversCanvas(index.frames[0])
+                && index.frames[0].disposalMethod != GraphicControlExtension.RESTORE_TO_PREVIOUS;
+        return index;
+    }
+
+    /**
+     * Start decoding a gif frame by frame, see open(GifByteSource).
+     */
+    public boolean open(byte[] data) {
+        return open(GifByteSource.wrap(data));
+    }
+
+    /**
+     * Start decoding a gif file frame by frame, see open(GifByteSource). The file is memory-mapped.
+     */
+    public boolean open(File file) {
+        GifByteSource src = mapSource(file);
+        return src != null && open(src);
+    }
+
+    /**
+     * Start decoding a gif frame by frame instead of loading all frames at once.
+     * Only the header is read here, frames are read with decodeNextFrame().
+     * @param src Gif data, kept until close() is called
+     * @return True if the header was read
+     */
+    boolean open(GifByteSource src) {
+        close();
+        init();
+        if(src == null) {
+            throw new NullPointerException("No data to load.");
+        }
+        mSource = src;
+        if(!readHeader(src)) {
+            LOG.fine("open() readHeader() failed");
+            close();
+            return false;
+        }
+        mBodyStart = src.position();
+        return true;
+    }
+
+    /**
+     * Go back to the first frame of the data given to open(), without reading the header again.
+     */
+    void rewind() {
+        if(mSource == null) {
+            return;
+        }
+        mSource.seek(mBodyStart);
+        mCompositor.reset();
+        mGCE = null;
+        mStreamFrameIndex = 0;
+    }
+
+    /**
+     * Use a saved index of the data given to open() for seekTo(), instead of scanning the data again.
+     * Must be called after open().
+     * @return False if the index was made from other data, by size or checksum, and is ignored
+     */
+    public boolean setFrameIndex(GifFrameIndex index) {
+        if(mSource == null || index == null || !index.matches(mSource)) {
+            return false;
+        }
+        mFrameIndex = index;
+        return true;
+    }
+
+    /**
+     * @return The index of the data given to open(), scanned on first use. Can be saved, see GifFrameIndex.writeTo().
+     */
+    public GifFrameIndex getFrameIndex() {
+        if(mFrameIndex == null && mSource != null) {
+            mFrameIndex = scan(mSource.duplicate());
+        }
+        return mFrameIndex;
+    }
+
+    /**
+     * Decode a frame of the data opened with open() into out, starting at the last keyframe before it
+     * instead of the first frame, or at the current frame if that is closer.
+     * Frames in between are drawn on the canvas without being written into a sink.
+     * decodeNextFrame() continues with the frame after it.
+     * @param frameIndex Frame to decode
+     * @param out Sink of getWidth() x getHeight() to receive the frame
+     * @return False if there is no such frame
+     */
+    public boolean seekTo(int frameIndex, GifFrameSink out) {
+        final GifFrameIndex index = getFrameIndex();
+        if(index == null || frameIndex < 0 || frameIndex >= index.getFrameCount()) {
+            return false;
+        }
+        final int keyframe = index.keyframeBefore(frameIndex);
+        if(mStreamFrameIndex < keyframe || mStreamFrameIndex > frameIndex) {
+            final GifFrameIndex.Entry start = index.frames[keyframe];
+            mSource.seek(start.offset);
+            mCompositor.reset();
+            if(start.canvasColor != 0) {
+                mCompositor.fill(0, 0, mCompositor.width, mCompositor.height, start.canvasColor);
+            }
+            mGCE = null;
+            mStreamFrameIndex = keyframe;
+        }
+        while(mStreamFrameIndex < frameIndex) {
+            if(!readNextFrame(mSource, mImage)) {
+                return false;
+            }
+            final long start = (mMetricsListener != null) ? System.nanoTime() : 0;
+            mCompositor.drawFrame(mImage);
+            mCompositor.disposeFrame(mImage);
+            if(mMetricsListener != null) {
+                reportFrame(mStreamFrameIndex, mImage, System.nanoTime() - start, 0);
+            }
+            mStreamFrameIndex++;
+        }
+        return decodeNextFrame(out);
+    }
+
+    /**
+     * Decode the frame shown timeMS after the start of the animation into out, see seekTo(int, GifFrameSink).
+     * @return False if the gif has no frames
+     */
+    public boolean seekToTime(int timeMS, GifFrameSink out) {
+        final GifFrameIndex index = getFrameIndex();
+        return index != null && index.getFrameCount() > 0 && seekTo(index.frameAt(timeMS), out);
+    }
+
+    /**
+     * Decode the next frame of the data opened with open().
+     * Only the frame base is kept by the decoder, the composited frame is written into out.
+     * @param out Sink of getWidth() x getHeight() to receive the frame
+     * @return False if there are no more frames
+     */
+    public boolean decodeNextFrame(GifFrameSink out) {
+        if(mSource == null) {
+            return false;
+        }
+        if(!readNextFrame(mSource, mImage)) {
+            return false;
+        }
+        composite(mImage, out, mStreamFrameIndex);
+        mStreamFrameIndex++;
+        return true;
+    }
+
+    /**
+     * @return Index of the frame the next decodeNextFrame() returns, the number of frames returned since open() or rewind() unless seekTo() was called
+     */
+    int getDecodedFrameCount() {
+        return mStreamFrameIndex;
+    }
+
+    /**
+     * @return Duration of the frame last returned by decodeNextFrame()
+     */
+    int getLastDelayMS() {
+        return mFrameDelayMS;
+    }
+
+    /**
+     * Start loading a gif given piece by piece to feed(), such as a gif being downloaded.
+     * Every frame is added as soon as its data is in, and is announced to the OnFrameDecodedListener,
+     * so it can be shown before the rest of the gif has arrived, instead of after the whole gif with load().
+     * Options must be set before.
+     */
+    public void beginFeed() {
+        close();
+        init();
+        mFeedSource = new GifByteSource.GrowingSource();
+        mFeedState = FEED_HEADER;
+        mFeedNanos = 0;
+        mFeedBytes = 0;
+    }
+
+    /**
+     * Give the next piece of the gif started with beginFeed(). The data is copied.
+     * Everything that can be read is read before returning, frames completed by the data are added.
+     * Parsing stops where the data ends, blocks are read once they are whole except the image data,
+     * which is decompressed as it arrives and carries on from the middle of a sub-block with the next piece.
+     * Only the data not read yet is kept.
+     * @return False if the trailer has been read, the data after it is ignored
+     */
+    public boolean feed(byte[] data, int offset, int length) {
+        if(mFeedSource == null) {
+            throw new IllegalStateException("feed() without beginFeed()");
+        }
+        if(mFeedState == FEED_DONE) {
+            return false;
+        }
+        mFeedSource.append(data, offset, length);
+        readFed();
+        return mFeedState != FEED_DONE;
+    }
+
+    /**
+     * End the data given to feed(). A frame cut short by the end of the data is added as far as it was decoded, as by load().
+     */
+    public void endFeed() {
+        if(mFeedSource == null) {
+            return;
+        }
+        if(mFeedState == FEED_IMAGE_DATA) {
+            LOG.severe("Unexpected end of image data");
+            finishFedImage();
+        }
+        if(getFrameCount() <= 0) {
+            LOG.severe("endFeed() frame count <= 0");
+        }
+        mFeedSource = null;
+        mFeedState = FEED_DONE;
+        releaseCompositor();// All frames are out, the canvas isn't needed any more
+    }
+
+    /**
+     * Read what has arrived of the data given to feed(), up to where it ends.
+     */
+    private void readFed() {
+        final GifByteSource.GrowingSource src = mFeedSource;
+        final boolean measured = mMetricsListener != null;
+        long start = measured ? System.nanoTime() : 0;
+        int startPosition = src.position();
+        boolean waiting = false;
+        while(!waiting) {
+            switch(mFeedState) {
+                case FEED_HEADER:
+                    waiting = !hasHeader(src);
+                    if(!waiting) {
+                        readHeader(src);
+                        mFeedState = FEED_BLOCKS;
+                    }
+                    break;
+                case FEED_BLOCKS:
+                    waiting = !hasBlock(src);
+                    if(!waiting) {
+                        final int sentinel = src.readByte();
+                        if(sentinel == SENTINEL_IMAGE) {
+                            beginImage(src, mImage);
+                            mFeedState = FEED_IMAGE_DATA;
+                        }
+                        else if(sentinel == SENTINEL_EXTENSION_BLOCK) {
+                            readExtensionBlock(src);
+                        }
+                        else if(sentinel == SENTINEL_TRAILER) {
+                            mFeedState = FEED_DONE;
+                        }
+                        // Unknown block, skipped a byte at a time as by readNextFrame()
+                    }
+                    break;
+                case FEED_IMAGE_DATA:
+                    waiting = !mCodeBook.decode(src);// Resumed with the next piece
+                    if(!waiting) {
+                        if(measured) {
+                            final long now = System.nanoTime();
+                            mFeedNanos += now - start;
+                            start = now;
+                        }
+                        mFeedBytes += src.position() - startPosition;
+                        startPosition = src.position();
+                        finishFedImage();
+                    }
+                    break;
+                default:
+                    waiting = true;
+            }
+        }
+        if(measured) {
+            mFeedNanos += System.nanoTime() - start;
+        }
+        mFeedBytes += src.position() - startPosition;
+    }
+
+    private void finishFedImage() {
+        endImage(mImage);
+        mImage.readNanos = mFeedNanos;
+        mImage.bytesRead = mFeedBytes;
+        mFeedNanos = 0;
+        mFeedBytes = 0;
+        addImage(mImage);
+        mFeedState = FEED_BLOCKS;
+    }
+
+    /**
+     * @return True if the signature, logical screen descriptor and global color table have arrived
+     */
+    private static boolean hasHeader(GifByteSource.GrowingSource src) {
+        final int start = src.position();
+        if(src.available() < 13) {
+            return false;
+        }
+        final int flags = src.get(start + 10);
+        final int gctBytes = ((flags & 0x80) == 0x80) ? 3 * (2 << (flags & 0x07)) : 0;
+        return src.available() >= 13 + gctBytes;
+    }
+
+    /**
+     * @return True if the next block has arrived whole, or up to its image data for an image block
+     */
+    private static boolean hasBlock(GifByteSource.GrowingSource src) {
+        final int start = src.position();
+        final int available = src.available();
+        if(available < 1) {
+            return false;
+        }
+        switch(src.get(start)) {
+            case SENTINEL_IMAGE:
+                return hasImageDescriptor(src, start + 1);
+            case SENTINEL_EXTENSION_BLOCK:
+                // Sentinel, type, then sub-blocks up to the terminator
+                int pos = start + 2;
+                while(pos < src.limit()) {
+                    final int subBlockSize = src.get(pos);
+                    if(subBlockSize == 0) {
+                        return true;
+                    }
+                    pos += 1 + subBlockSize;
+                }
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Stop decoding the data given to open() or feed(). The canvas goes back to GifBufferPool.
+     */
+    public void close() {
+        mSource = null;
+        mFeedSource = null;
+        releaseCompositor();
+    }
+
+    private void releaseCompositor() {
+        if(mCompositor != null) {
+            mCompositor.release();
+            mCompositor = null;
+        }
+    }
+
+    /**
+     * @return Width of the frames, the gif's width divided by the sample size
+     */
+    public int getWidth() {
+        return mLSD == null ? 0 : sampledSize(mLSD.width, mSampleSize);
+    }
+
+    /**
+     * @return Height of the frames, the gif's height divided by the sample size
+     */
+    public int getHeight() {
+        return mLSD == null ? 0 : sampledSize(mLSD.height, mSampleSize);
+    }
+
+    /**
+     * Decode frames smaller than the gif, taking every sampleSize-th pixel of every sampleSize-th row,
+     * like BitmapFactory.Options.inSampleSize. Must be set before load() or open().
+     * @param sampleSize 1 for full size, 2 for half width and height and so on
+     */
+    public void setSampleSize(int sampleSize) {
+        this.mSampleSize = Math.max(1, sampleSize);
+    }
+
+    /**
+     * Composite frames as RGB_565 instead of ARGB_8888, taking half the memory. Must be set before load() or open().
+     * Only for gifs without transparency, see GifInfo.opaque, transparent pixels come out black.
+     */
+    public void setPixelFormat(GifFrameSink.PixelFormat format) {
+        this.mPixelFormat = (format == null) ? GifFrameSink.PixelFormat.ARGB_8888 : format;
+    }
+
+    /**
+     * @return Format of the pixels written into the frame sinks
+     */
+    public GifFrameSink.PixelFormat getPixelFormat() {
+        return mPixelFormat;
+    }
+
+    /**
+     * Make the sinks load() composites frames into, IntBufferFrameSink.FACTORY by default. Must be set before load().
+     */
+    public void setFrameSinkFactory(GifFrameSink.Factory factory) {
+        this.mSinkFactory = (factory == null) ? IntBufferFrameSink.FACTORY : factory;
+    }
+
+    /**
+     * @return Number of samples taken over size pixels
+     */
+    static int sampledSize(int size, int sampleSize) {
+        return (size + sampleSize - 1) / sampleSize;
+    }
+
+    /**
+     * Announce every frame added by load() or feed(), see OnFrameDecodedListener. Must be set before load() or beginFeed().
+     */
+    public void setOnFrameDecodedListener(OnFrameDecodedListener listener) {
+        this.mOnFrameDecodedListener = listener;
+    }
+
+    /**
+     * Report the time and data taken by every frame, see MetricsListener. Must be set before load() or open().
+     * Without a listener the decoder doesn't look at the clock.
+     */
+    public void setMetricsListener(MetricsListener listener) {
+        this.mMetricsListener = listener;
+    }
+
+    public int getFrameCount() {
+        return mFrames.size();
+    }
+
+    boolean isLooped() {
+        return mLoopCount != GifInfo.NO_LOOP;
+    }
+
+    /**
+     * @return Times the animation repeats after being played once, GifInfo.LOOP_FOREVER or GifInfo.NO_LOOP
+     */
+    public int getLoopCount() {
+        return mLoopCount;
+    }
+
+    /**
+     * @return Properties of the gif loaded by load() or feed(). opaque is left false, it is only found by probe()
+     */
+    GifInfo getInfo() {
+        GifInfo info = new GifInfo();
+        if(mLSD != null) {
+            info.width = mLSD.width;
+            info.height = mLSD.height;
+        }
+        info.frameCount = getFrameCount();
+        for(int i = 0; i < info.frameCount; ++i) {
+            info.durationMS += getDelayMS(i);
+        }
+        info.loopCount = mLoopCount;
+        return info;
+    }
+
+    /**
+     * Decompress images on a second thread while load() composites. Off by default: it only pays with a core to spare,
+     * measure with DecodeBenchmark.loadPipelined() before turning it on.
+     * Ignored with setKeepIndexedFrames(true), and when all parsing threads are taken by other loads.
+     * Must be set before load().
+     */
+    public void setPipelined(boolean pipelined) {
+        this.mPipelined = pipelined;
+    }
+
+    /**
+     * Keep frames as color indices instead of bitmaps when loading, see getIndexedFrame().
+     * Must be set before load().
+     */
+    void setKeepIndexedFrames(boolean keep) {
+        this.mKeepIndexedFrames = keep;
+    }
+
+    /**
+     * @return Frame loaded with setKeepIndexedFrames(true), or null
+     */
+    IndexedFrame getIndexedFrame(int index) {
+        if(index < mFrames.size()) {
+            return mFrames.get(index).image;
+        }
+        return null;
+    }
+
+    /**
+     * @return Sink a loaded frame was composited into, or null if frames are kept as color indices
+     */
+    public GifFrameSink getFrameSink(int index) {
+        if(index < mFrames.size()) {
+            return mFrames.get(index).sink;
+        }
+        return null;
+    }
+
+    public int getDelayMS(int index) {
+        if(index < mFrames.size()) {
+            return mFrames.get(index).duration;
+        }
+        return 0;
+    }
+
+    private void readBody(GifByteSource src) {
+        if(mPipelined && !mKeepIndexedFrames && sParseThreads.tryAcquire()) {
+            try {
+                readBodyPipelined(src);
+            }
+            finally {
+                sParseThreads.release();
+            }
+            return;
+        }
+        while(readNextFrame(src, mImage)) {
+            addImage(mImage);
+        }
+    }
+
+    /**
+     * Add the frame of an image, as color indices or composited into a new sink.
+     */
+    private void addImage(IndexedFrame image) {
+        if(mKeepIndexedFrames) {
+            if(mMetricsListener != null) {
+                reportFrame(mFrames.size(), image, 0, 0);
+            }
+            addFrame(new Frame(image.copy(), image.delayMS));
+        }
+        else {
+            addFrame(new Frame(composite(image, null, mFrames.size()), image.delayMS));
+        }
+    }
+
+    private void addFrame(Frame frame) {
+        mFrames.add(frame);
+        //LOG.fine(String.format("FrameCount: %d", mFrames.size()));
+        if(mOnFrameDecodedListener != null) {
+            mOnFrameDecodedListener.onFrameDecoded(this, mFrames.size() - 1);
+        }
+    }
+
+    /**
+     * Read image blocks on a thread of sParseExecutor while the calling thread composites them.
+     * Decompressing an image doesn't depend on the canvas, so the next image is decompressed
+     * while the previous one is drawn. The two threads pass images through a pair of bounded queues,
+     * the images and their buffers are reused.
+     * The parser is always waited for before returning, also when compositing throws, since it uses this decoder's parsing state.
+     */
+    private void readBodyPipelined(final GifByteSource src) {
+        final ArrayBlockingQueue<IndexedFrame> read = new ArrayBlockingQueue<IndexedFrame>(PIPELINE_DEPTH + 1);
+        final ArrayBlockingQueue<IndexedFrame> drawn = new ArrayBlockingQueue<IndexedFrame>(PIPELINE_DEPTH + 1);
+        for(int i = 0; i < PIPELINE_DEPTH; ++i) {
+            drawn.add(new IndexedFrame());
+        }
+        final IndexedFrame endOfImages = new IndexedFrame();// Last thing the parser does
+        final IndexedFrame stop = new IndexedFrame();// Given to the parser instead of an image to end it early
+        final Throwable[] parseError = new Throwable[1];// Published by endOfImages
+        final int priority = Thread.currentThread().getPriority();
+
+        // Only the parsing state is used by the parsing thread, only the canvas and frames by this one
+        getParseExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                Thread.currentThread().setPriority(priority);// Half the work, not to be left behind by the compositing thread
+                try {
+                    IndexedFrame image;
+                    while((image = drawn.take()) != stop && readNextFrame(src, image)) {
+                        read.add(image);
+                    }
+                }
+                catch (InterruptedException e) {
+                    // Only if the pool is shut down, end as if stopped
+                }
+                catch (RuntimeException e) {
+                    parseError[0] = e;
+                }
+                catch (Error e) {
+                    parseError[0] = e;
+                }
+                finally {
+                    read.add(endOfImages);// There is room, at most PIPELINE_DEPTH images are in the queues
+                }
+            }
+        });
+
+        boolean parsed = false;// endOfImages taken, the parser is done with this decoder
+        boolean interrupted = false;
+        try {
+            IndexedFrame image;
+            while((image = read.take()) != endOfImages) {
+                addFrame(new Frame(composite(image, null, mFrames.size()), image.delayMS));
+                drawn.add(image);
+            }
+            parsed = true;
+        }
+        catch (InterruptedException e) {
+            interrupted = true;
+        }
+        finally {
+            if(!parsed) {// Left early, stop the parser and wait for it without giving up on an interrupt
+                drawn.clear();
+                drawn.add(stop);
+                while(!parsed) {
+                    try {
+                        parsed = (read.take() == endOfImages);
+                    }
+                    catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if(interrupted) {
+            throw new RuntimeException("load() interrupted after " + mFrames.size() + " frames");
+        }
+        if(parseError[0] instanceof RuntimeException) {// Thrown while parsing, throw it from load() as without the pipeline
+            throw (RuntimeException)parseError[0];
+        }
+        if(parseError[0] instanceof Error) {
+            throw (Error)parseError[0];
+        }
+    }
+
+    private static synchronized ExecutorService getParseExecutor() {
+        if(sParseExecutor == null) {
+            // One thread per permit of sParseThreads, a task only waits for the end of the one before
+            sParseExecutor = Executors.newFixedThreadPool(MAX_PARSE_THREADS, new ThreadFactory() {
+                private int mThreadCount = 0;
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "GifParser-" + (++mThreadCount));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return sParseExecutor;
+    }
+
+    /**
+     * @return The palette of a color table with a transparent color, made once per decoder for the GCT
+     */
+    private Palette resolvePalette(ColorTable table, int transparencyIndex) {
+        if(table == mGCT) {
+            Palette palette = mGCTPalettes[transparencyIndex + 1];
+            if(palette == null) {
+                palette = new Palette(table.colors, transparencyIndex);
+                mGCTPalettes[transparencyIndex + 1] = palette;
+            }
+            return palette;
+        }
+        // The LCT is read again for every image, it is often the same table
+        if(mLCTPalette == null || !mLCTPalette.isFor(table.colors, transparencyIndex)) {
+            mLCTPalette = new Palette(table.colors, transparencyIndex);
+        }
+        return mLCTPalette;
+    }
+
+    /**
+     * Read blocks until an image block has been read into image or the trailer is reached.
+     * @return False if there are no more frames
+     */
+    private boolean readNextFrame(GifByteSource src, IndexedFrame image) {
+        final boolean measured = mMetricsListener != null;
+        final long start = measured ? System.nanoTime() : 0;
+        final int startPosition = src.position();
+        int sentinel;
+        do {
+            sentinel = src.readByte();
+            switch (sentinel) {
+                case SENTINEL_IMAGE:
+                    if(!hasImageDescriptor(src, src.position())) {
+                        LOG.severe("Unexpected end of image descriptor");
+                        return false;
+                    }
+                    readImageBlock(src, image);
+                    mGCE = null;// GCE is used for one frame then removed.
+                    if(measured) {
+                        image.readNanos = System.nanoTime() - start;
+                        image.bytesRead = src.position() - startPosition;
+                    }
+                    return true;
+                case SENTINEL_EXTENSION_BLOCK:
+                    readExtensionBlock(src);
+                    break;
+                case SENTINEL_TRAILER://End of file
+                case -1:// Unexpected end of stream
+                    return false;
+                default:// Unknown block
+
+            }
+        } while(true);
+    }
+
+    /**
+     * @return True if the image descriptor, local color table and root size of an image block are all in the data,
+     * so that readImageBlock() doesn't read sizes from past the end
+     * @param position Position of the image descriptor, after the image separator
+     */
+    private static boolean hasImageDescriptor(GifByteSource src, int position) {
+        final int available = src.limit() - position;
+        if(available < 9) {
+            return false;
+        }
+        final int flags = src.get(position + 8);
+        final int lctBytes = ((flags & 0x80) == 0x80) ? 3 * (2 << (flags & 0x07)) : 0;
+        return available >= 10 + lctBytes;
+    }
+
+    private static final int EXTENSION_GRAPHIC_CONTROL = 0xf9;
+    private static final int EXTENSION_COMMENT = 0xfe;
+    private static final int EXTENSION_PLAIN_TEXT = 0x01;
+    private static final int EXTENSION_APPLICATION = 0xff;
+
+    private void readExtensionBlock(GifByteSource src) {
+        int extType = src.readByte();
+
+        switch(extType) {
+            case EXTENSION_GRAPHIC_CONTROL:
+                mGCEBuffer.read(src);
+                mGCE = mGCEBuffer;
+                break;
+            case EXTENSION_APPLICATION:
+                final int loopCount = readApplicationExtension(src);
+                if(loopCount != GifInfo.NO_LOOP) {
+                    mLoopCount = loopCount;
+                }
+                break;
+            case EXTENSION_COMMENT:
+            case EXTENSION_PLAIN_TEXT:
+            default:
+                skipBlock(src);
+        }
+    }
+
+    private static void skipBlock(GifByteSource src) {
+        int subBlockSize;
+        while((subBlockSize = src.readByte()) > 0x0) {
+            src.skip(subBlockSize);
+        }
+    }
+
+    private static final String NETSCAPE_ID = "NETSCAPE2.0";
+    private static final String ANIMEXTS_ID = "ANIMEXTS1.0";
+    private static final int NETSCAPE_LOOP_SUBBLOCK_ID = 1;
+
+    /**
+     * Read an application extension block.
+     * @return Loop count if it is a NETSCAPE2.0 looping extension, GifInfo.NO_LOOP otherwise
+     */
+    private static int readApplicationExtension(GifByteSource src) {
+        int loopCount = GifInfo.NO_LOOP;
+        final int blockSize = src.readByte();
+        String appId = "";
+        for(int i = 0; i < blockSize; ++i) {
+            appId += (char)src.readByte();
+        }
+        final boolean isLoopExtension = NETSCAPE_ID.equals(appId) || ANIMEXTS_ID.equals(appId);
+
+        int subBlockSize;
+        while((subBlockSize = src.readByte()) > 0x0) {
+            if(isLoopExtension && subBlockSize >= 3) {
+                if(src.readByte() == NETSCAPE_LOOP_SUBBLOCK_ID) {
+                    loopCount = src.readUShort();
+                    src.skip(subBlockSize - 3);
+                }
+                else {
+                    src.skip(subBlockSize - 1);
+                }
+            }
+            else {
+                src.skip(subBlockSize);
+            }
+        }
+        return loopCount;
+    }
+
+    /**
+     * Read an image block into image, without drawing it. The image's buffers are reused.
+     */
+    private void readImageBlock(GifByteSource src, IndexedFrame image) {
+        beginImage(src, image);
+        if(!mCodeBook.decode(src)) {
+            LOG.severe("Unexpected end of image data");
+        }
+        endImage(image);
+    }
+
+    /**
+     * Read the image descriptor and color table of an image block, and get mCodeBook ready for its data.
+     */
+    private void beginImage(GifByteSource src, IndexedFrame image) {
+        if(SHOW_GIF_INFO) {
+            LOG.info("Begin ImageBlock -----------------------------------");
+        }
+
+        // Begin image descriptor
+        int x = src.readUShort();
+        int y = src.readUShort();
+        int w = src.readUShort();
+        int h = src.readUShort();
+        int lctSize;
+        int flags = src.readByte();// Local color table size
+        ColorTable lct = null;
+
+        boolean interlaced = ((flags & 0x40) == 0x40);
+        boolean lctSorted = ((flags & 0x20) == 0x20);
+        if((flags & 0x80) == 0x80) {// Has LCT
+            lctSize = (int)Math.pow(2, ((flags & 0x07)  + 1));
+            if(lctSize > 0) {
+                mLCT.read(src, lctSize);
+                lct = mLCT;
+            }
+        }
+        if(lct == null) {// No LCT, use GCT
+            if(SHOW_GIF_INFO) {
+                LOG.info("No LCT, use GCT");
+            }
+            lct = mGCT;
+        }
+        // End image descriptor
+
+        if(SHOW_GIF_INFO) {
+            LOG.info("Image origin: " + String.format("(%d, %d)", x, y));
+            LOG.info("Image size:   " + String.format("(%d, %d)", w, h));
+            LOG.info("LCT size:     " + String.format("%d", lct.size));
+        }
+
+        /**
+         * Terminology:
+         * pix - An uncompressed pixel
+         * pixStr - A series of pixels
+         * code - A compressed unit. A code is key to a pixStr
+         * codeStr - A series of codes
+         * entry - {code, pixStr} pair
+         * prefix - The prefix code of a code. Because a pixStr is made of either "a single pix", or "a pixStr from another entry + a single pix"
+         *
+         */
+
+
+        // Begin image data
+        final int MAX_DICTIONARY_SIZE = 4096;//12bits
+        //Bitmap bm = Bitmap.createBitmap(mLSD.width, mLSD.height, Bitmap.Config.ARGB_8888);// Output frame
+        final int rootSize = src.readByte();// Decoded data element size (Value is at least 2)
+        //final int compressionCodeSize = rootSize + 1;// GIF89a appendix F: This code size value also implies that the compression codes must start out one bit longer.
+        final int CLEAR_CODE = (1 << rootSize);
+
+        if(SHOW_GIF_INFO) {
+            LOG.fine(String.format("RootSize = %d", rootSize));
+            LOG.fine(String.format("ClearCode = %x", CLEAR_CODE));
+        }
+        /**
+         * prefix stores which code is prepended for this code. It is used to look up the entire code string without using more memory space.
+         */
+        // Moved to LZWDictionary
+        //short prefix[] = new short[MAX_DICTIONARY_SIZE];// prefixes with index smaller than END_OF_INFORMATION is not used (because they don't have prefixes)
+
+
+        // Process blocks
+        final int imageSize = w * h;
+        if(image.decodeBuffer == null || image.decodeBuffer.length < imageSize) {// Grows to the largest image block
+            image.decodeBuffer = new byte[imageSize];
+        }
+        final byte[] pixels = image.decodeBuffer;
+
+        mCodeBook.reset(rootSize, pixels, 0, imageSize);
+
+        image.x = x;
+        image.y = y;
+        image.width = w;
+        image.height = h;
+        image.interlaced = interlaced;
+        image.indices = pixels;
+        image.palette = resolvePalette(lct, (mGCE != null && mGCE.transparencyFlag) ? mGCE.transparencyIndex : GifCompositor.NO_TRANSPARENCY_INDEX);
+        image.disposalMethod = (mGCE == null) ? GraphicControlExtension.NO_ACTION : mGCE.disposalMethod;
+        image.backgroundColor = image.palette.colors[mLSD.backgroundIndex];// Transparent if the background is the transparent color
+        image.delayMS = (mGCE == null) ? 0 : mGCE.delayMS;// No duration if GCE doesn't exist
+        mGCE = null;// GCE block is used for a single frame
+    }
+
+    /**
+     * Finish an image once mCodeBook has decoded its data, or as much of it as there is.
+     */
+    private void endImage(IndexedFrame image) {
+        final int pixelCount = mCodeBook.getOutputPosition();
+        if(SHOW_GIF_INFO) {
+            LOG.fine(String.format("image block size %d, actual read size %d", image.width * image.height, pixelCount));
+        }
+
+        image.indexCount = pixelCount;
+        if(mSampleSize > 1) {// Everything after this works on the smaller image
+            subsample(image, mSampleSize);
+        }
+        mFrameDelayMS = image.delayMS;
+
+        if(SHOW_GIF_INFO) {
+            LOG.info("End ImageBlock -------------------------------------");
+        }
+    }
+
+    /**
+     * Replace an image's indices by every sampleSize-th index of every sampleSize-th row, in rows from top to bottom,
+     * and its rectangle by the rectangle on a canvas sampleSize times smaller.
+     * Pixels at multiples of sampleSize on the gif's canvas are kept, so images next to each other stay next to each other.
+     */
+    private void subsample(IndexedFrame image, int sampleSize) {
+        final int left = sampledSize(image.x, sampleSize);
+        final int top = sampledSize(image.y, sampleSize);
+        final int sampledWidth = Math.max(0, sampledSize(image.x + image.width, sampleSize) - left);
+        final int sampledHeight = Math.max(0, sampledSize(image.y + image.height, sampleSize) - top);
+        if(image.sampleBuffer == null || image.sampleBuffer.length < sampledWidth * sampledHeight) {
+            image.sampleBuffer = new byte[sampledWidth * sampledHeight];
+        }
+        final byte[] src = image.indices;
+        final byte[] dst = image.sampleBuffer;
+
+        int count = 0;
+        sampling:
+        for(int row = 0; row < sampledHeight; ++row) {
+            final int imageRow = (top + row) * sampleSize - image.y;
+            final int srcRow = image.interlaced ? interlacedRowPosition(imageRow, image.height) : imageRow;
+            int srcIndex = srcRow * image.width + left * sampleSize - image.x;
+            for(int col = 0; col < sampledWidth; ++col) {
+                if(srcIndex >= image.indexCount) {// Cut short, the rest isn't drawn
+                    break sampling;
+                }
+                dst[count++] = src[srcIndex];
+                srcIndex += sampleSize;
+            }
+        }
+
+        image.x = left;
+        image.y = top;
+        image.width = sampledWidth;
+        image.height = sampledHeight;
+        image.interlaced = false;
+        image.indices = dst;
+        image.indexCount = count;
+    }
+
+    /**
+     * @return Position of a row among the rows of an interlaced image, in the order they are stored
+     */
+    private static int interlacedRowPosition(int row, int height) {
+        final int pass1Start = (height + 7) / 8;// Rows 0, 8, 16...
+        final int pass2Start = pass1Start + (height + 3) / 8;// Rows 4, 12, 20...
+        final int pass3Start = pass2Start + (height + 1) / 4;// Rows 2, 6, 10...
+        if(row % 8 == 0) {
+            return row / 8;
+        }
+        if(row % 8 == 4) {
+            return pass1Start + row / 8;
+        }
+        if(row % 4 == 2) {
+            return pass2Start + row / 4;
+        }
+        return pass3Start + row / 2;// Odd rows
+    }
+
+    /**
+     * Draw an image on the canvas and write the canvas into a sink, then dispose of the image
+     * to leave the background for the next frame on the canvas.
+     * @param target Sink to write the frame into, or null to make a new one
+     * @param index Frame number, for the metrics listener
+     * @return The composited frame
+     */
+    private GifFrameSink composite(IndexedFrame image, GifFrameSink target, int index) {
+        final long start = (mMetricsListener != null) ? System.nanoTime() : 0;
+        final GifCompositor compositor = mCompositor;
+        compositor.drawFrame(image);
+
+        GifFrameSink frame;
+        if(target == null) {
+            frame = mSinkFactory.create(compositor.width, compositor.height, mPixelFormat);
+        }
+        else {// Reuse the caller's sink
+            frame = target;
+        }
+        compositor.writeTo(frame);
+
+        compositor.disposeFrame(image);
+        if(mMetricsListener != null) {
+            reportFrame(index, image, System.nanoTime() - start, compositor.width * compositor.height);
+        }
+        return frame;
+    }
+
+    private void reportFrame(int index, IndexedFrame image, long compositeNanos, int pixelsWritten) {
+        mMetricsListener.onFrameMetrics(this, index, image.readNanos, compositeNanos, image.bytesRead, pixelsWritten);
+    }
+
+    private static int rgb(int red, int green, int blue) {
+        return BLACK | (red << 16) | (green << 8) | blue;
+    }
+
+    private static void readSignature(GifByteSource src) {
+        String signature = "";
+        // "GIFxxx"
+        for(int i = 0; i < 6; ++i) {
+            signature += (char)src.readByte();
+        }
+        if(!signature.startsWith("GIF")) {
+            throw new RuntimeException("Not a valid gif file.");
+        }
+    }
+
+    private boolean readHeader(GifByteSource src) {
+        readSignature(src);
+        mLSD = new LogicalScreenDescriptor(src);//Read LSD
+        mGCT = new ColorTable(src, mLSD.gctExists ? mLSD.gctSize : 0);
+
+        // Setup the canvas for the first frame, transparent
+        releaseCompositor();
+        mCompositor = GifCompositor.create(getWidth(), getHeight(), mPixelFormat);
+
+        return true;
+    }
+
+    private void init() {
+        mFrames = new Vector<Frame>();
+        mLSD = null;
+        mGCT = null;
+        mLoopCount = GifInfo.NO_LOOP;
+        mStreamFrameIndex = 0;
+        mFrameIndex = null;
+        mFrameDelayMS = 0;
+        Arrays.fill(mGCTPalettes, null);
+        mLCTPalette = null;
+    }
+
+
+}
@@ -0,0 +1,235 @@
+package com.kuoster.gifanimationdrawable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Position, rectangle and disposal of every frame of a gif, found by GifDecoder2.scan() without decoding any pixels.
+ * Lets GifDecoder2.seekTo() start decoding at the nearest keyframe instead of the first frame.
+ * An index can be saved with writeTo() and read back with readFrom(), so a gif is scanned once,
+ * see GifDecoder2.getFrameIndex() and GifDecoder2.setFrameIndex().
+ * An index read back is only used with the data it was made from, checked by size and checksum().
+ */
+public final class GifFrameIndex {
+    private static final int MAGIC = 0x47494658;// "GIFX"
+    private static final int VERSION = 2;
+
+    /**
+     * A frame as found in the data, before decoding.
+     */
+    static final class Entry {
+        int offset;// Position of the first block after the previous image block, where reading the frame starts
+        int dataOffset;// Position of the image data, after the image descriptor, local color table and root size
+        int x;
+        int y;
+        int width;
+        int height;
+        int disposalMethod;// One of GraphicControlExtension's disposal methods
+        boolean transparent;// The GCE has a transparent color
+        int backgroundColor;// Color left by RESTORE_BG_COLOR, as IndexedFrame.backgroundColor
+        int delayMS;
+        int startTimeMS;// Sum of the delays of the frames before
+
+        // Set by markKeyframes()
+        boolean keyframe;// The canvas before this frame is known without decoding the frames before it
+        int canvasColor;// Color the canvas has before a keyframe is drawn
+    }
+
+    final GifDecoder2.GifInfo info;
+    final int dataLength;// Size of the data scanned, an index is only used with data of the same size
+    final long checksum;// See checksum()
+    final Entry[] frames;
+
+    GifFrameIndex(GifDecoder2.GifInfo info, int dataLength, long checksum, Entry[] frames) {
+        this.info = info;
+        this.dataLength = dataLength;
+        this.checksum = checksum;
+        this.frames = frames;
+        markKeyframes();
+    }
+
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    /**
+     * @return Delay of each frame as found in the gif
+     */
+    int[] getDelaysMS() {
+        int[] delaysMS = new int[frames.length];
+        for(int i = 0; i < frames.length; ++i) {
+            delaysMS[i] = frames[i].delayMS;
+        }
+        return delaysMS;
+    }
+
+    /**
+     * @return The last keyframe at or before frameIndex
+     */
+    int keyframeBefore(int frameIndex) {
+        int i = frameIndex;
+        while(i > 0 && !frames[i].keyframe) {
+            --i;
+        }
+        return i;
+    }
+
+    /**
+     * @return The frame shown timeMS after the start of the animation, the last frame if it is past the end
+     */
+    int frameAt(int timeMS) {
+        // Last frame starting at or before timeMS
+        int low = 0;
+        int high = frames.length - 1;
+        while(low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if(frames[mid].startTimeMS <= timeMS) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A frame is a keyframe if the canvas before it doesn't depend on what frames before it drew:
+     * the first frame, a frame covering the canvas without transparency that isn't restored afterwards,
+     * or a frame after one covering the canvas and restored to the background color.
+     */
+    private void markKeyframes() {
+        for(int i = 0; i < frames.length; ++i) {
+            final Entry frame = frames[i];
+            frame.keyframe = false;
+            frame.canvasColor = 0;
+            if(i == 0) {
+                frame.keyframe = true;// Starts on a transparent canvas
+            }
+            else if(coversCanvas(frame) && !frame.transparent
+                    && frame.disposalMethod != GifDecoder2.GraphicControlExtension.RESTORE_TO_PREVIOUS) {
+                frame.keyframe = true;// Every pixel is drawn over, the canvas before it doesn't show
+            }
+            else if(coversCanvas(frames[i - 1]) && frames[i - 1].disposalMethod == GifDecoder2.GraphicControlExtension.RESTORE_BG_COLOR) {
+                frame.keyframe = true;
+                frame.canvasColor = frames[i - 1].backgroundColor;
+            }
+        }
+    }
+
+    /**
+     * @return True if the index was made from this data, or from data with the same size and blocks
+     */
+    boolean matches(GifByteSource src) {
+        return src.limit() == dataLength && checksum(src, frames) == checksum;
+    }
+
+    /**
+     * @return CRC32 of the blocks the index describes: the header and global color table,
+     * and the blocks of every frame up to its image data. The image data itself isn't read.
+     * Data rewritten with other frames has other blocks at the positions of the frames.
+     */
+    static long checksum(GifByteSource src, Entry[] frames) {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[256];
+        if(frames.length > 0) {
+            update(crc, buffer, src, 0, frames[0].offset);
+        }
+        for(Entry frame : frames) {
+            update(crc, buffer, src, frame.offset, frame.dataOffset);
+        }
+        return crc.getValue();
+    }
+
+    private static void update(CRC32 crc, byte[] buffer, GifByteSource src, int start, int end) {
+        final int limit = Math.min(end, src.limit());
+        int length = 0;
+        for(int i = Math.max(0, start); i < limit; ++i) {
+            buffer[length++] = (byte)src.get(i);
+            if(length == buffer.length) {
+                crc.update(buffer, 0, length);
+                length = 0;
+            }
+        }
+        crc.update(buffer, 0, length);
+    }
+
+    boolean coversCanvas(Entry frame) {
+        return frame.x == 0 && frame.y == 0 && frame.width >= info.width && frame.height >= info.height;
+    }
+
+    /**
+     * Save the index, to be read back by readFrom(). The stream is not closed.
+     */
+    public void writeTo(OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(dataLength);
+        out.writeLong(checksum);
+        out.writeInt(info.width);
+        out.writeInt(info.height);
+        out.writeInt(info.loopCount);
+        out.writeBoolean(info.opaque);
+        out.writeInt(frames.length);
+        for(Entry frame : frames) {
+            out.writeInt(frame.offset);
+            out.writeInt(frame.dataOffset);
+            out.writeShort(frame.x);
+            out.writeShort(frame.y);
+            out.writeShort(frame.width);
+            out.writeShort(frame.height);
+            out.writeByte(frame.disposalMethod);
+            out.writeBoolean(frame.transparent);
+            out.writeInt(frame.backgroundColor);
+            out.writeInt(frame.delayMS);
+        }
+        out.flush();
+    }
+
+    /**
+     * Read an index saved by writeTo(). The stream is not closed.
+     * Whether it belongs to a gif is checked when it is given to GifDecoder2.setFrameIndex().
+     * @throws IOException If the data isn't an index of this version
+     */
+    public static GifFrameIndex readFrom(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a gif frame index");
+        }
+        final int dataLength = in.readInt();
+        final long checksum = in.readLong();
+        GifDecoder2.GifInfo info = new GifDecoder2.GifInfo();
+        info.width = in.readInt();
+        info.height = in.readInt();
+        info.loopCount = in.readInt();
+        info.opaque = in.readBoolean();
+        final int frameCount = in.readInt();
+        if(frameCount < 0 || frameCount > dataLength) {
+            throw new IOException("Invalid frame count " + frameCount);
+        }
+        Entry[] frames = new Entry[frameCount];
+        for(int i = 0; i < frameCount; ++i) {
+            final Entry frame = new Entry();
+            frame.offset = in.readInt();
+            frame.dataOffset = in.readInt();
+            frame.x = in.readUnsignedShort();
+            frame.y = in.readUnsignedShort();
+            frame.width = in.readUnsignedShort();
+            frame.height = in.readUnsignedShort();
+            frame.disposalMethod = in.readUnsignedByte();
+            frame.transparent = in.readBoolean();
+            frame.backgroundColor = in.readInt();
+            frame.delayMS = in.readInt();
+            frame.startTimeMS = info.durationMS;
+            info.durationMS += frame.delayMS;
+            frames[i] = frame;
+        }
+        info.frameCount = frameCount;
+        return new GifFrameIndex(info, dataLength, checksum, frames);
+    }
+}
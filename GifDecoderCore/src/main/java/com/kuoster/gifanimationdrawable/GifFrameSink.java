@@ -0,0 +1,37 @@
+package com.kuoster.gifanimationdrawable;
+
+/**
+ * Receives the frames composited by GifDecoder2, width x height pixels as returned by GifDecoder2.getWidth() and getHeight().
+ * IntBufferFrameSink writes them into an int[] or IntBuffer, the Android library into a Bitmap.
+ */
+public interface GifFrameSink {
+    /**
+     * Pixel format the decoder composites in.
+     */
+    enum PixelFormat {
+        /** 32-bit ARGB */
+        ARGB_8888,
+        /** 16-bit RGB, half the memory and copying. Transparent pixels are black, only for gifs without transparency */
+        RGB_565
+    }
+
+    /**
+     * Makes a sink for every frame kept by GifDecoder2.load().
+     */
+    interface Factory {
+        GifFrameSink create(int width, int height, PixelFormat format);
+    }
+
+    /**
+     * Write a rectangle of ARGB pixels into the frame.
+     * @param argb Pixels, the first one at offset, rows stride apart
+     * @param x Left of the rectangle in the frame
+     * @param y Top of the rectangle in the frame
+     */
+    void setPixels(int[] argb, int offset, int stride, int x, int y, int width, int height);
+
+    /**
+     * Write a whole frame of RGB 565 pixels, rows of width pixels one after the other.
+     */
+    void setPixels565(short[] rgb565, int width, int height);
+}
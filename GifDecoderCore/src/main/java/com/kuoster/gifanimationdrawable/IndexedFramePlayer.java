@@ -0,0 +1,123 @@
+package com.kuoster.gifanimationdrawable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Plays frames kept as color indices, see GifDecoder2.setKeepIndexedFrames().
+ * Frames are expanded to colors one at a time when they are shown, into a single sink such as a bitmap,
+ * so an animation takes a byte per pixel of each image block plus one canvas and one sink.
+ */
+class IndexedFramePlayer {
+    private final ArrayList<GifDecoder2.IndexedFrame> mFrames = new ArrayList<GifDecoder2.IndexedFrame>();
+    private final GifCompositor mCompositor;
+    private final GifFrameSink mTarget;
+    private int mIndex = -1;// Frame on the canvas, -1 before the first frame
+
+    /**
+     * @param format ARGB_8888, or RGB_565 for gifs without transparency
+     * @param target Sink of width x height frames are shown in, owned by the caller
+     */
+    IndexedFramePlayer(int width, int height, GifFrameSink.PixelFormat format, GifFrameSink target) {
+        mCompositor = GifCompositor.create(width, height, format);
+        mTarget = target;
+    }
+
+    IndexedFramePlayer(int width, int height, GifFrameSink.PixelFormat format, GifFrameSink target, GifDecoder2.IndexedFrame[] frames) {
+        this(width, height, format, target);
+        mFrames.addAll(Arrays.asList(frames));
+    }
+
+    void addFrame(GifDecoder2.IndexedFrame frame) {
+        mFrames.add(frame);
+    }
+
+    /**
+     * Expand the first frame of a decoder keeping indexed frames into a sink, to show while the rest is decoded.
+     */
+    static void drawFirstFrame(GifDecoder2 dec, GifFrameSink out) {
+        GifCompositor compositor = GifCompositor.create(dec.getWidth(), dec.getHeight(), dec.getPixelFormat());
+        compositor.drawFrame(dec.getIndexedFrame(0));
+        compositor.writeTo(out);
+        compositor.release();
+    }
+
+    int getFrameCount() {
+        return mFrames.size();
+    }
+
+    /**
+     * @return Index of the frame in the target sink, -1 before the first advance()
+     */
+    int getCurrentIndex() {
+        return mIndex;
+    }
+
+    int getDelayMS(int index) {
+        return mFrames.get(index).delayMS;
+    }
+
+    /**
+     * Give the canvas to GifBufferPool, the target sink stays with the caller. The player must not be used afterwards.
+     */
+    void release() {
+        mCompositor.release();
+    }
+
+    /**
+     * Show the next frame in the target sink, or the first one after the last.
+     */
+    void advance() {
+        if(!mFrames.isEmpty()) {
+            advanceTo((mIndex + 1) % mFrames.size());
+        }
+    }
+
+    /**
+     * Show a frame in the target sink, going past the last frame to the first if it is before the current one.
+     * Frames in between are drawn on the canvas without being written into the sink.
+     * Only the rectangles of the frames drawn and disposed of are written into the sink.
+     */
+    void advanceTo(int index) {
+        if(index < 0 || index >= mFrames.size() || index == mIndex) {
+            return;
+        }
+        final GifCompositor compositor = mCompositor;
+        int left = compositor.width;
+        int top = compositor.height;
+        int right = 0;
+        int bottom = 0;
+        do {
+            final int next = (mIndex + 1) % mFrames.size();
+            final GifDecoder2.IndexedFrame frame = mFrames.get(next);
+            if(next == 0) {// Start over from a transparent canvas
+                compositor.reset();
+                left = 0;
+                top = 0;
+                right = compositor.width;
+                bottom = compositor.height;
+            }
+            else {
+                final GifDecoder2.IndexedFrame previous = mFrames.get(mIndex);
+                compositor.disposeFrame(previous);
+                left = Math.min(left, previous.x);
+                top = Math.min(top, previous.y);
+                right = Math.max(right, previous.x + previous.width);
+                bottom = Math.max(bottom, previous.y + previous.height);
+            }
+            compositor.drawFrame(frame);
+            left = Math.min(left, frame.x);
+            top = Math.min(top, frame.y);
+            right = Math.max(right, frame.x + frame.width);
+            bottom = Math.max(bottom, frame.y + frame.height);
+            mIndex = next;
+        } while(mIndex != index);
+
+        // Clip to the canvas
+        right = Math.min(right, compositor.width);
+        bottom = Math.min(bottom, compositor.height);
+        if(right > left && bottom > top) {
+            compositor.writeTo(mTarget, left, top, right, bottom);
+        }
+    }
+}
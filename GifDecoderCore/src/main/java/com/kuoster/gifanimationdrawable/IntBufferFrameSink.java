@@ -0,0 +1,62 @@
+package com.kuoster.gifanimationdrawable;
+
+import java.nio.IntBuffer;
+
+/**
+ * Writes frames into an IntBuffer of ARGB pixels, rows of the frame width one after the other.
+ * RGB_565 frames are expanded to opaque ARGB.
+ */
+public class IntBufferFrameSink implements GifFrameSink {
+    /** Makes a sink over a new int[] for every frame, the default of GifDecoder2.load() */
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public GifFrameSink create(int width, int height, PixelFormat format) {
+            return new IntBufferFrameSink(new int[width * height], width);
+        }
+    };
+
+    private final IntBuffer mPixels;
+    private final int mWidth;
+
+    /**
+     * @param pixels Frame pixels, from the buffer's position
+     * @param width Frame width
+     */
+    public IntBufferFrameSink(IntBuffer pixels, int width) {
+        this.mPixels = pixels.slice();
+        this.mWidth = width;
+    }
+
+    public IntBufferFrameSink(int[] pixels, int width) {
+        this(IntBuffer.wrap(pixels), width);
+    }
+
+    /**
+     * @return The frame pixels, from index 0
+     */
+    public IntBuffer getPixels() {
+        return mPixels.duplicate();
+    }
+
+    @Override
+    public void setPixels(int[] argb, int offset, int stride, int x, int y, int width, int height) {
+        final IntBuffer dst = mPixels;
+        for(int row = 0; row < height; ++row) {
+            dst.position((y + row) * mWidth + x);
+            dst.put(argb, offset + row * stride, width);
+        }
+        dst.clear();
+    }
+
+    @Override
+    public void setPixels565(short[] rgb565, int width, int height) {
+        final IntBuffer dst = mPixels;
+        for(int i = 0; i < width * height; ++i) {
+            final int pixel = rgb565[i] & 0xffff;
+            final int r = pixel >>> 11;
+            final int g = (pixel >>> 5) & 0x3f;
+            final int b = pixel & 0x1f;
+            dst.put(i, 0xff000000 | ((r << 3 | r >>> 2) << 16) | ((g << 2 | g >>> 4) << 8) | (b << 3 | b >>> 2));
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.kuoster.gifanimationdrawable;
+
+import java.util.logging.Logger;
+
+/**
+ * LZW Dictionary for gif
+ * One dictionary is reused for every image block, see reset(). Decoded pixels are written
+ * straight into the caller's buffer, so decoding a frame doesn't allocate.
+ *
+ * Instead of walking prefix chains, each code remembers the length of its pixStr, its first pix
+ * and where its pixStr was last written in the output. A pixStr of a new entry is always the
+ * pixStr of the previous code followed by one pix, which is exactly what the output holds at the
+ * previous code's position. Emitting a code is therefore a forward copy of an earlier run.
+ */
+class LZWDictionary {
+    private static final Logger LOG = Logger.getLogger(LZWDictionary.class.getName());
+    private static final boolean SHOW_DEBUG_INFO = false;
+    static final int MAX_DICTIONARY_SIZE = 4096;
+    static final int MAX_CODE_SIZE = 12;
+    /** Runs shorter than this are copied in a loop, longer ones with System.arraycopy() */
+    private static final int ARRAYCOPY_THRESHOLD = 16;
+    short[] length;// Length of the pixStr of this code
+    int[] position;// Index in output where the pixStr of this code was written
+    byte[] headPix;// First pix of the pixStr of this code
+//    private final DictionaryEvents dictEvents;
+    private int rootSize;
+    private int CLEAR_CODE;
+    private int END_OF_INFORMATION;
+
+    // state
+    int curCodeSize;
+    int curCodeMask;// Bits mask for one code, changes with curCodeSize
+    int curCodeUpperBound;// non-inclusive upperbound
+    int nextEmptyEntry;
+    final int NO_CODE = -1;
+    int prevCode;
+
+    // Bit buffer, refilled 32 bits at a time from the sub-blocks
+    long bitBuffer;
+    int bitBufferLength;
+
+    // Position in the sub-blocks, kept when the data ends so that decode() can carry on with more data
+    int blockRemaining;// Bytes of the current sub-block not read yet, a size byte is next when 0
+    boolean imageDone;// Image filled, END_OF_INFORMATION or bad code read, the rest of the data is skipped
+    boolean terminated;// Block terminator read
+
+    // Output
+    byte[] output;
+    int outputPos;
+    int outputEnd;// Non-inclusive, outputPos + image size
+
+    LZWDictionary() {
+        //this.dictEvents = dictEvents;
+        this.length = new short[MAX_DICTIONARY_SIZE];
+        this.position = new int[MAX_DICTIONARY_SIZE];
+        this.headPix = new byte[MAX_DICTIONARY_SIZE];
+    }
+
+    /**
+     * Prepare for a new image block.
+     * @param rootSize Root size of the image data
+     * @param output Buffer receiving the decoded pixels
+     * @param offset Index of the first pixel in output
+     * @param imageSize Number of pixels in the image
+     */
+    void reset(int rootSize, byte[] output, int offset, int imageSize) {
+        this.rootSize = rootSize;
+        this.CLEAR_CODE = (1 << rootSize);
+        this.END_OF_INFORMATION = this.CLEAR_CODE + 1;
+        this.output = output;
+        this.outputPos = offset;
+        this.outputEnd = offset + imageSize;
+        this.bitBuffer = this.bitBufferLength = 0;
+        this.blockRemaining = 0;
+        this.imageDone = this.terminated = false;
+        for(int i = 0; i < CLEAR_CODE; ++i) {// Roots never change
+            length[i] = 1;
+            headPix[i] = (byte)i;
+        }
+        clear();
+    }
+
+    /**
+     * @return Index after the last pixel written to output
+     */
+    int getOutputPosition() {
+        return outputPos;
+    }
+
+    private void setCodeSize(int newSize) {
+        curCodeSize = newSize;
+        curCodeMask = 0xffffffff >>> (32 - newSize);
+        curCodeUpperBound = 1 << newSize;
+        if(SHOW_DEBUG_INFO) {
+            LOG.fine(String.format("Code size: %d", curCodeSize));
+        }
+    }
+    private void increaseCodeSizeByOne() {
+        setCodeSize(curCodeSize + 1);
+    }
+
+    /**
+     * Add the entry [prevCode + one pix]. Its pixStr is in the output where prevCode was written.
+     * @param pixStrStart Index in output where the pixStr of prevCode was written
+     */
+    private void addEntry(int prevCode, int pixStrStart) {
+        int code = this.nextEmptyEntry;
+        if(code >= MAX_DICTIONARY_SIZE) {// Full, wait for a clear code
+            return;
+        }
+        //LOG.fine(String.format("Add code %x", code));
+        this.nextEmptyEntry++;
+        this.length[code] = (short)(this.length[prevCode] + 1);
+        this.position[code] = pixStrStart;
+        this.headPix[code] = this.headPix[prevCode];
+        if(this.nextEmptyEntry == this.curCodeUpperBound && this.curCodeSize < MAX_CODE_SIZE) {
+            // bump up code size
+            increaseCodeSizeByOne();
+        }
+    }
+
+
+    /**
+     * Respond to clear code
+     * Bit buffer is retained.
+     */
+    private void clear() {
+        setCodeSize(rootSize + 1);
+        nextEmptyEntry = END_OF_INFORMATION + 1;
+        prevCode = NO_CODE;
+    }
+
+
+    /**
+     * Write the pixStr of a code to the output.
+     * @return Index in output where the pixStr was written
+     */
+    private int emitPixStr(int code) {
+        final byte[] out = this.output;
+        final int start = outputPos;
+        // Pixels past the end of the image are dropped
+        final int len = Math.min(length[code], outputEnd - start);
+        if(code < CLEAR_CODE) {
+            if(len > 0) {
+                out[start] = headPix[code];
+            }
+        }
+        else {
+            final int src = position[code];
+            if(len >= ARRAYCOPY_THRESHOLD && src + len <= start) {
+                System.arraycopy(out, src, out, start, len);
+            }
+            else {
+                // Forward copy, also right when the run overlaps its own output.
+                // This happens for a code that isn't in the dictionary yet: its last pix is its first pix.
+                for(int i = 0; i < len; ++i) {
+                    out[start + i] = out[src + i];
+                }
+            }
+        }
+        outputPos = start + len;
+        return start;
+    }
+
+    private int prevPixStrStart;// Index in output where the pixStr of prevCode was written
+
+    /**
+     * Decode the image data sub-blocks starting at the position of src.
+     * Sub-blocks are stitched on the fly: codes are read straight from src, and the bit buffer
+     * is refilled with up to 32 bits at once.
+     * On return src is positioned after the block terminator, remaining data is skipped when
+     * the image is filled or END_OF_INFORMATION is read first.
+     * If the data ends before the block terminator, src is positioned at its end and everything needed to
+     * carry on is kept, even in the middle of a sub-block or a code. Calling decode() again once src has
+     * more data continues where it stopped, see GifDecoder2.feed().
+     * @return False if the data ended before the block terminator
+     */
+    boolean decode(GifByteSource src) {
+        final byte[] data = src.array();// Index the array directly when there is one
+        final int limit = src.limit();
+        int pos = src.position();
+        int blockEnd = pos + blockRemaining;// Non-inclusive end of the current sub-block, a size byte is next when reached
+        int blockCut = 0;// Bytes of the current sub-block past the end of data, blockEnd stops at the end of data
+        if(blockEnd > limit) {
+            blockCut = blockEnd - limit;
+            blockEnd = limit;
+        }
+        boolean terminated = this.terminated;
+        boolean imageDone = this.imageDone;
+        long bits = this.bitBuffer;
+        int bitCount = this.bitBufferLength;
+
+        decodeLoop:
+        while(!imageDone && outputPos < outputEnd) {// Process next code
+            if(bitCount < curCodeSize) {
+                // Refill
+                while(bitCount <= 56 && !terminated) {
+                    if(pos == blockEnd) {// Next sub-block
+                        if(pos >= limit) {
+                            break;
+                        }
+                        final int blockSize = (data != null) ? (data[pos] & 0xff) : src.get(pos);
+                        pos++;
+                        if(blockSize == 0) {
+                            terminated = true;
+                            break;
+                        }
+                        blockEnd = pos + blockSize;
+                        if(blockEnd > limit) {// The sub-block is cut short by the end of data
+                            blockCut = blockEnd - limit;
+                            blockEnd = limit;
+                        }
+                        continue;
+                    }
+                    if(bitCount <= 32 && blockEnd - pos >= 4) {
+                        final int word;// Little-endian
+                        if(data != null) {
+                            word = (data[pos] & 0xff) | ((data[pos + 1] & 0xff) << 8)
+                                    | ((data[pos + 2] & 0xff) << 16) | ((data[pos + 3] & 0xff) << 24);
+                        }
+                        else {
+                            word = src.get(pos) | (src.get(pos + 1) << 8)
+                                    | (src.get(pos + 2) << 16) | (src.get(pos + 3) << 24);
+                        }
+                        bits |= (word & 0xffffffffL) << bitCount;
+                        bitCount += 32;
+                        pos += 4;
+                    }
+                    else {
+                        bits |= (long)((data != null) ? (data[pos] & 0xff) : src.get(pos)) << bitCount;
+                        bitCount += 8;
+                        pos++;
+                    }
+                }
+                if(bitCount < curCodeSize) {// Out of data, the bits read so far are kept for the rest of the code
+                    if(terminated) {
+                        imageDone = true;
+                    }
+                    break;
+                }
+            }
+            final int code = (int)bits & curCodeMask;//get
+            bits >>>= curCodeSize;//remove
+            bitCount -= curCodeSize;
+
+            if((code > this.nextEmptyEntry) || (code == END_OF_INFORMATION)) {
+                if(SHOW_DEBUG_INFO) {
+                    LOG.fine(String.format("Stop with code = %x", code));
+                }
+                //dictEvents.OnEndOfInformation();
+                imageDone = true;
+                break;
+            }
+            if(code == CLEAR_CODE) {// Reset dictionary
+                if(SHOW_DEBUG_INFO) {
+                    LOG.fine("Clear code!");
+                }
+                clear();
+                continue;
+            }
+            if(prevCode == NO_CODE) {// First code
+                if(code > CLEAR_CODE) {// Must be a root, file is corrupted
+                    LOG.severe("Error decoding");
+                    imageDone = true;
+                    break;
+                }
+                prevPixStrStart = emitPixStr(code);
+                prevCode = code;
+                continue;
+            }
+            if(code == this.nextEmptyEntry && code < MAX_DICTIONARY_SIZE) {// If code is not in dictionary, add [prevCode + first element of prevCode]
+                addEntry(prevCode, prevPixStrStart);
+                prevPixStrStart = emitPixStr(code);
+            }
+            else if(code < this.nextEmptyEntry) {
+                final int start = emitPixStr(code);
+                addEntry(prevCode, prevPixStrStart);
+                prevPixStrStart = start;
+            }
+            else {//ERROR, should never enter here unless file is corrupted.
+                LOG.severe("Error decoding");
+                imageDone = true;
+                break decodeLoop;
+            }
+            prevCode = code;
+        }
+        if(outputPos >= outputEnd) {
+            imageDone = true;
+        }
+        this.bitBuffer = bits;
+        this.bitBufferLength = bitCount;
+
+        // Skip what is left up to the block terminator
+        blockEnd += blockCut;
+        if(imageDone) {
+            while(!terminated) {
+                if(pos < blockEnd) {// Rest of the sub-block
+                    if(blockEnd > limit) {
+                        pos = limit;
+                        break;
+                    }
+                    pos = blockEnd;
+                }
+                if(pos >= limit) {
+                    break;
+                }
+                final int blockSize = (data != null) ? (data[pos] & 0xff) : src.get(pos);
+                pos++;
+                if(blockSize == 0) {
+                    terminated = true;
+                    break;
+                }
+                blockEnd = pos + blockSize;
+            }
+        }
+        this.blockRemaining = blockEnd - pos;
+        this.imageDone = imageDone;
+        this.terminated = terminated;
+        src.seek(pos);
+        return terminated;
+    }
+
+    void encode(int b) {
+        //Not used for now
+    }
+}
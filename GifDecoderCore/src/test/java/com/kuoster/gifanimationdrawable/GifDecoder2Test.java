@@ -0,0 +1,302 @@
+package com.kuoster.gifanimationdrawable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that load(), open() with decodeNextFrame(), feed() and seekTo() agree on the frames of a gif,
+ * also when the gif is cut short.
+ */
+public class GifDecoder2Test {
+    private static final String[] GIFS = { "/animation.gif", "/animation_interlaced.gif" };
+
+    private static byte[] readGif(String name) throws IOException {
+        final InputStream is = GifDecoder2Test.class.getResourceAsStream(name);
+        assertTrue("Missing test gif " + name, is != null);
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int n;
+            while((n = is.read(buffer)) != -1) {
+                bos.write(buffer, 0, n);
+            }
+            return bos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    private static int[] pixelsOf(GifFrameSink sink) {
+        final IntBuffer pixels = ((IntBufferFrameSink)sink).getPixels().duplicate();
+        final int[] argb = new int[pixels.remaining()];
+        pixels.get(argb);
+        return argb;
+    }
+
+    private static List<int[]> framesOf(GifDecoder2 dec) {
+        final List<int[]> frames = new ArrayList<int[]>();
+        for(int i = 0; i < dec.getFrameCount(); ++i) {
+            frames.add(pixelsOf(dec.getFrameSink(i)));
+        }
+        return frames;
+    }
+
+    private static List<int[]> load(byte[] data, int sampleSize) {
+        final GifDecoder2 dec = new GifDecoder2();
+        dec.setSampleSize(sampleSize);
+        dec.setPipelined(false);
+        dec.load(data);
+        return framesOf(dec);
+    }
+
+    private static List<int[]> open(byte[] data, int sampleSize) {
+        final GifDecoder2 dec = new GifDecoder2();
+        dec.setSampleSize(sampleSize);
+        final List<int[]> frames = new ArrayList<int[]>();
+        if(!dec.open(data)) {
+            return frames;
+        }
+        while(true) {
+            final int[] argb = new int[dec.getWidth() * dec.getHeight()];
+            if(!dec.decodeNextFrame(new IntBufferFrameSink(argb, dec.getWidth()))) {
+                break;
+            }
+            frames.add(argb);
+        }
+        dec.close();
+        return frames;
+    }
+
+    private static List<int[]> feedByteByByte(byte[] data, int sampleSize) {
+        final GifDecoder2 dec = new GifDecoder2();
+        dec.setSampleSize(sampleSize);
+        dec.beginFeed();
+        for(int i = 0; i < data.length; ++i) {
+            if(!dec.feed(data, i, 1)) {
+                break;
+            }
+        }
+        dec.endFeed();
+        return framesOf(dec);
+    }
+
+    private static void assertSameFrames(String message, List<int[]> expected, List<int[]> actual) {
+        assertEquals(message + " frame count", expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); ++i) {
+            assertArrayEquals(message + " frame " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void loadOpenAndFeedGiveTheSameFrames() throws IOException {
+        for(String name : GIFS) {
+            final byte[] data = readGif(name);
+            for(int sampleSize = 1; sampleSize <= 2; ++sampleSize) {
+                final String message = name + " sample size " + sampleSize;
+                final List<int[]> loaded = load(data, sampleSize);
+                assertTrue(message + " has frames", loaded.size() > 1);
+                assertSameFrames(message + " open", loaded, open(data, sampleSize));
+                assertSameFrames(message + " feed", loaded, feedByteByByte(data, sampleSize));
+            }
+        }
+    }
+
+    @Test
+    public void pipelinedLoadGivesTheSameFrames() throws IOException {
+        for(String name : GIFS) {
+            final byte[] data = readGif(name);
+            final GifDecoder2 dec = new GifDecoder2();
+            dec.setPipelined(true);
+            dec.load(data);
+            assertSameFrames(name, load(data, 1), framesOf(dec));
+        }
+    }
+
+    @Test
+    public void pipelinedLoadStopsTheParserWhenCompositingThrows() throws IOException {
+        for(String name : GIFS) {
+            final byte[] data = readGif(name);
+            final List<int[]> expected = load(data, 1);
+            for(int failAt = 0; failAt < expected.size(); ++failAt) {
+                final GifDecoder2 dec = new GifDecoder2();
+                dec.setPipelined(true);
+                final int failingFrame = failAt;
+                dec.setOnFrameDecodedListener(new GifDecoder2.OnFrameDecodedListener() {
+                    @Override
+                    public void onFrameDecoded(GifDecoder2 decoder, int index) {
+                        if(index == failingFrame) {
+                            throw new IllegalStateException("Listener failed");
+                        }
+                    }
+                });
+                try {
+                    dec.load(data);
+                    fail(name + " listener exception not thrown");
+                } catch(IllegalStateException expectedException) {
+                }
+                // Loaded again right away, a parser still running would read into the same decoder
+                dec.setOnFrameDecodedListener(null);
+                dec.load(data);
+                assertSameFrames(name + " loaded again after failing at " + failAt, expected, framesOf(dec));
+            }
+        }
+    }
+
+    @Test
+    public void pipelinedLoadReportsAnInterrupt() throws IOException {
+        for(String name : GIFS) {
+            final byte[] data = readGif(name);
+            final GifDecoder2 dec = new GifDecoder2();
+            dec.setPipelined(true);
+            Thread.currentThread().interrupt();
+            try {
+                dec.load(data);
+                fail(name + " interrupt not reported");
+            } catch(RuntimeException expected) {
+            }
+            assertTrue(name + " interrupt kept", Thread.interrupted());
+            dec.load(data);
+            assertSameFrames(name + " loaded again after an interrupt", load(data, 1), framesOf(dec));
+        }
+    }
+
+    @Test
+    public void seekToMatchesSequentialDecoding() throws IOException {
+        for(String name : GIFS) {
+            final byte[] data = readGif(name);
+            final List<int[]> sequential = open(data, 1);
+            final GifDecoder2 dec = new GifDecoder2();
+            assertTrue(dec.open(data));
+            final int[] argb = new int[dec.getWidth() * dec.getHeight()];
+            final GifFrameSink sink = new IntBufferFrameSink(argb, dec.getWidth());
+            // Backwards, so every seek goes back to a keyframe instead of carrying on from the current frame
+            for(int i = sequential.size() - 1; i >= 0; --i) {
+                assertTrue(name + " seek " + i, dec.seekTo(i, sink));
+                assertArrayEquals(name + " seek " + i, sequential.get(i), argb);
+                if(i + 1 < sequential.size()) {
+                    assertTrue(name + " next after seek " + i, dec.decodeNextFrame(sink));
+                    assertArrayEquals(name + " next after seek " + i, sequential.get(i + 1), argb);
+                }
+            }
+            assertFalse(name + " seek past the end", dec.seekTo(sequential.size(), sink));
+            dec.close();
+        }
+    }
+
+    @Test
+    public void savedFrameIndexSeeksLikeTheScannedOne() throws IOException {
+        for(String name : GIFS) {
+            final byte[] data = readGif(name);
+            final List<int[]> sequential = open(data, 1);
+            final GifDecoder2 scanned = new GifDecoder2();
+            assertTrue(scanned.open(data));
+            final ByteArrayOutputStream saved = new ByteArrayOutputStream();
+            scanned.getFrameIndex().writeTo(saved);
+            scanned.close();
+
+            final GifFrameIndex index = GifFrameIndex.readFrom(new ByteArrayInputStream(saved.toByteArray()));
+            assertEquals(name + " frame count", sequential.size(), index.getFrameCount());
+            final GifDecoder2 dec = new GifDecoder2();
+            assertTrue(dec.open(data));
+            assertTrue(name + " index accepted", dec.setFrameIndex(index));
+            final int[] argb = new int[dec.getWidth() * dec.getHeight()];
+            final GifFrameSink sink = new IntBufferFrameSink(argb, dec.getWidth());
+            for(int i = sequential.size() - 1; i >= 0; --i) {
+                assertTrue(name + " seek " + i, dec.seekTo(i, sink));
+                assertArrayEquals(name + " seek " + i, sequential.get(i), argb);
+            }
+            dec.close();
+        }
+    }
+
+    @Test
+    public void frameIndexOfOtherDataIsRejected() throws IOException {
+        for(String name : GIFS) {
+            final byte[] data = readGif(name);
+            final GifDecoder2 dec = new GifDecoder2();
+            assertTrue(dec.open(data));
+            final GifFrameIndex index = dec.getFrameIndex();
+            dec.close();
+
+            assertFalse(name + " other size", dec.open(Arrays.copyOf(data, data.length - 1)) && dec.setFrameIndex(index));
+            dec.close();
+            // Same size but other blocks: the global color table and the first block of every frame
+            final List<Integer> changed = new ArrayList<Integer>();
+            changed.add(13);
+            for(GifFrameIndex.Entry frame : index.frames) {
+                changed.add(frame.offset);
+                changed.add(frame.dataOffset - 1);
+            }
+            for(int position : changed) {
+                final byte[] other = data.clone();
+                other[position] ^= 0x01;
+                assertTrue(dec.open(other));
+                assertFalse(name + " changed at " + position, dec.setFrameIndex(index));
+                dec.close();
+            }
+        }
+    }
+
+    @Test
+    public void truncatedInputKeepsTheFramesBeforeTheCut() throws IOException {
+        for(String name : GIFS) {
+            final byte[] data = readGif(name);
+            final List<int[]> full = load(data, 1);
+            for(int cut = 0; cut < data.length; ++cut) {
+                final byte[] truncated = Arrays.copyOf(data, cut);
+                final String message = name + " cut at " + cut;
+                final List<int[]> loaded;
+                try {
+                    loaded = load(truncated, 1);
+                } catch(RuntimeException e) {
+                    // Only a cut header may be refused
+                    assertTrue(message + " threw " + e, e.getMessage().startsWith("Not a valid") || e.getMessage().startsWith("Truncated"));
+                    // feed() waits for the rest of the header instead, and ends without frames
+                    assertEquals(message + " feed", 0, feedByteByByte(truncated, 1).size());
+                    try {
+                        open(truncated, 1);
+                        fail(message + " open didn't throw like load");
+                    } catch(RuntimeException expected) {
+                        assertEquals(message + " open", e.getMessage(), expected.getMessage());
+                    }
+                    continue;
+                }
+                assertTrue(message + " frame count", loaded.size() <= full.size());
+                // The last frame may be missing rows, the ones before must be whole
+                for(int i = 0; i + 1 < loaded.size(); ++i) {
+                    assertArrayEquals(message + " frame " + i, full.get(i), loaded.get(i));
+                }
+                assertSameFrames(message + " open", loaded, open(truncated, 1));
+                assertSameFrames(message + " feed", loaded, feedByteByByte(truncated, 1));
+            }
+        }
+    }
+
+    @Test
+    public void probeSizeReadsOnlyTheHeader() throws IOException {
+        for(String name : GIFS) {
+            final byte[] data = readGif(name);
+            final GifDecoder2.GifInfo info = GifDecoder2.probe(GifByteSource.wrap(data));
+            final ByteArrayInputStream is = new ByteArrayInputStream(data);
+            final GifDecoder2.GifInfo size = GifDecoder2.probeSize(is);
+            assertEquals(name + " width", info.width, size.width);
+            assertEquals(name + " height", info.height, size.height);
+            assertEquals(name + " bytes read", data.length - 13, is.available());
+            assertEquals(name + " cut header", 0, GifDecoder2.probeSize(new ByteArrayInputStream(Arrays.copyOf(data, 12))).width);
+        }
+    }
+}
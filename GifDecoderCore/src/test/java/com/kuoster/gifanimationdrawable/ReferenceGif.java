@@ -0,0 +1,509 @@
+package com.kuoster.gifanimationdrawable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Textbook gif writing, reading and compositing for tests to compare GifDecoder2 with.
+ * Written to be obviously right rather than fast: LZW strings are whole arrays in a list,
+ * every frame is drawn on a copy of the whole canvas, and nothing is shared with the decoder.
+ */
+final class ReferenceGif {
+    static final int NO_ACTION = 0;
+    static final int DO_NOT_DISPOSE = 1;
+    static final int RESTORE_BG_COLOR = 2;
+    static final int RESTORE_TO_PREVIOUS = 3;
+    static final int NO_TRANSPARENCY_INDEX = -1;
+
+    private static final int MAX_CODE_SIZE = 12;
+    private static final int MAX_DICTIONARY_SIZE = 1 << MAX_CODE_SIZE;
+    private static final int[] INTERLACE_START_ROWS = {0, 4, 2, 1};
+    private static final int[] INTERLACE_STEP_ROWS = {8, 8, 4, 2};
+
+    /**
+     * An image block with its graphic control extension.
+     */
+    static final class Image {
+        int x;
+        int y;
+        int width;
+        int height;
+        int[] localColors;// RGB, null to use the global color table
+        boolean interlaced;
+        byte[] indices;// Rows from top to bottom, also when interlaced
+        int disposalMethod = NO_ACTION;
+        int transparencyIndex = NO_TRANSPARENCY_INDEX;
+        int delayMS;
+
+        // Set by read()
+        int rootSize;
+        byte[] data;// Image data without the sub-block sizes
+    }
+
+    /**
+     * A gif read by read().
+     */
+    static final class Gif {
+        int width;
+        int height;
+        int[] globalColors;// RGB, null if there is no global color table
+        int backgroundIndex;
+        final List<Image> images = new ArrayList<Image>();
+    }
+
+    /**
+     * Writes a gif. Image data is compressed by a textbook LZW encoder.
+     */
+    static final class Writer {
+        private final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+        private final int mGlobalColorCount;
+        private boolean mDeferredClear;
+
+        /**
+         * Write the header and the global color table.
+         * @param globalColors RGB colors, a power of 2 of them, or null for no global color table
+         */
+        Writer(int width, int height, int[] globalColors, int backgroundIndex) {
+            writeAscii("GIF89a");
+            writeShort(width);
+            writeShort(height);
+            mOut.write((globalColors != null) ? 0x80 | 0x70 | tableBits(globalColors) : 0);
+            mOut.write(backgroundIndex);
+            mOut.write(0);// No pixel aspect ratio
+            writeColors(globalColors);
+            mGlobalColorCount = (globalColors != null) ? globalColors.length : 256;
+        }
+
+        /**
+         * Keep going with a full dictionary instead of clearing it, as some encoders do. The default is to clear it.
+         */
+        Writer setDeferredClear(boolean deferredClear) {
+            mDeferredClear = deferredClear;
+            return this;
+        }
+
+        Writer add(Image image) {
+            final boolean transparent = image.transparencyIndex != NO_TRANSPARENCY_INDEX;
+            mOut.write(0x21);
+            mOut.write(0xf9);
+            mOut.write(4);
+            mOut.write((image.disposalMethod << 2) | (transparent ? 1 : 0));
+            writeShort(image.delayMS / 10);
+            mOut.write(transparent ? image.transparencyIndex : 0);
+            mOut.write(0);
+
+            mOut.write(0x2c);
+            writeShort(image.x);
+            writeShort(image.y);
+            writeShort(image.width);
+            writeShort(image.height);
+            int flags = image.interlaced ? 0x40 : 0;
+            if(image.localColors != null) {
+                flags |= 0x80 | tableBits(image.localColors);
+            }
+            mOut.write(flags);
+            writeColors(image.localColors);
+
+            final byte[] indices = image.interlaced ? interlace(image.indices, image.width, image.height) : image.indices;
+            final int colorCount = (image.localColors != null) ? image.localColors.length : mGlobalColorCount;
+            int rootSize = 2;
+            while((1 << rootSize) < colorCount) {
+                rootSize++;
+            }
+            final byte[] data = encode(indices, rootSize, mDeferredClear);
+            mOut.write(rootSize);
+            for(int i = 0; i < data.length; i += 255) {
+                final int length = Math.min(255, data.length - i);
+                mOut.write(length);
+                mOut.write(data, i, length);
+            }
+            mOut.write(0);// Block terminator
+            return this;
+        }
+
+        /**
+         * Write the trailer.
+         * @return The gif
+         */
+        byte[] finish() {
+            mOut.write(0x3b);
+            return mOut.toByteArray();
+        }
+
+        private static int tableBits(int[] colors) {
+            int bits = 0;
+            while((2 << bits) < colors.length) {
+                bits++;
+            }
+            if((2 << bits) != colors.length) {
+                throw new IllegalArgumentException("Color tables have 2, 4, ... 256 colors");
+            }
+            return bits;
+        }
+
+        private void writeColors(int[] colors) {
+            if(colors == null) {
+                return;
+            }
+            for(int color : colors) {
+                mOut.write(color >> 16);
+                mOut.write(color >> 8);
+                mOut.write(color);
+            }
+        }
+
+        private void writeShort(int value) {
+            mOut.write(value);
+            mOut.write(value >> 8);
+        }
+
+        private void writeAscii(String s) {
+            for(int i = 0; i < s.length(); ++i) {
+                mOut.write(s.charAt(i));
+            }
+        }
+    }
+
+    private ReferenceGif() {
+    }
+
+    /**
+     * Textbook LZW encoder, see GIF89a appendix F.
+     * @param deferredClear Keep going with a full dictionary instead of clearing it
+     * @return Codes packed from the lowest bit, without sub-block sizes
+     */
+    static byte[] encode(byte[] indices, int rootSize, boolean deferredClear) {
+        final int clearCode = 1 << rootSize;
+        final int endCode = clearCode + 1;
+        final BitWriter out = new BitWriter();
+        final Map<Integer, Integer> dictionary = new HashMap<Integer, Integer>();// prefix << 8 | pix -> code
+        int nextCode = endCode + 1;
+        int codeSize = rootSize + 1;
+        int codesSinceClear = 0;
+        out.write(clearCode, codeSize);
+        int prefix = indices[0] & 0xff;
+        for(int i = 1; i < indices.length; ++i) {
+            final int pix = indices[i] & 0xff;
+            final Integer code = dictionary.get((prefix << 8) | pix);
+            if(code != null) {
+                prefix = code;
+                continue;
+            }
+            out.write(prefix, codeSize);
+            codesSinceClear++;
+            if(nextCode < MAX_DICTIONARY_SIZE) {
+                dictionary.put((prefix << 8) | pix, nextCode++);
+                // The decoder adds the entry one code later, and grows the code size once its dictionary fills the current size
+                if(nextCode > (1 << codeSize) && codeSize < MAX_CODE_SIZE) {
+                    codeSize++;
+                }
+            }
+            else if(!deferredClear) {
+                out.write(clearCode, codeSize);
+                dictionary.clear();
+                nextCode = endCode + 1;
+                codeSize = rootSize + 1;
+                codesSinceClear = 0;
+            }
+            prefix = pix;
+        }
+        out.write(prefix, codeSize);
+        codesSinceClear++;
+        // The decoder adds an entry for the last code too, which may grow the code size of the end code
+        if(codesSinceClear > 1 && nextCode == (1 << codeSize) && codeSize < MAX_CODE_SIZE) {
+            codeSize++;
+        }
+        out.write(endCode, codeSize);
+        return out.toByteArray();
+    }
+
+    /**
+     * Textbook LZW decoder, see GIF89a appendix F. Every string is kept whole in the dictionary.
+     * @param data Codes without sub-block sizes
+     * @param pixelCount Pixels of the image, decoding stops there
+     * @return The decoded indices, fewer than pixelCount if the data ends before
+     */
+    static byte[] decode(byte[] data, int rootSize, int pixelCount) {
+        final int clearCode = 1 << rootSize;
+        final int endCode = clearCode + 1;
+        final List<byte[]> dictionary = new ArrayList<byte[]>();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int codeSize = rootSize + 1;
+        byte[] previous = null;
+        int bitPosition = 0;
+        clearDictionary(dictionary, clearCode);
+        while(out.size() < pixelCount && bitPosition + codeSize <= 8 * data.length) {
+            int code = 0;
+            for(int bit = 0; bit < codeSize; ++bit, ++bitPosition) {
+                code |= ((data[bitPosition >> 3] >> (bitPosition & 7)) & 1) << bit;
+            }
+            if(code == clearCode) {
+                clearDictionary(dictionary, clearCode);
+                codeSize = rootSize + 1;
+                previous = null;
+                continue;
+            }
+            if(code == endCode) {
+                break;
+            }
+            final byte[] string;
+            if(code < dictionary.size()) {
+                string = dictionary.get(code);
+            }
+            else if(code == dictionary.size() && previous != null) {// The string being defined, previous + its own first pix
+                string = append(previous, previous[0]);
+            }
+            else {
+                break;// Bad code
+            }
+            out.write(string, 0, string.length);
+            if(previous != null && dictionary.size() < MAX_DICTIONARY_SIZE) {
+                dictionary.add(append(previous, string[0]));
+                if(dictionary.size() == (1 << codeSize) && codeSize < MAX_CODE_SIZE) {
+                    codeSize++;
+                }
+            }
+            previous = string;
+        }
+        final byte[] decoded = out.toByteArray();
+        if(decoded.length <= pixelCount) {
+            return decoded;
+        }
+        final byte[] ret = new byte[pixelCount];
+        System.arraycopy(decoded, 0, ret, 0, pixelCount);
+        return ret;
+    }
+
+    private static void clearDictionary(List<byte[]> dictionary, int clearCode) {
+        dictionary.clear();
+        for(int i = 0; i < clearCode; ++i) {
+            dictionary.add(new byte[] {(byte)i});
+        }
+        dictionary.add(null);// Clear code
+        dictionary.add(null);// End code
+    }
+
+    private static byte[] append(byte[] string, byte pix) {
+        final byte[] ret = new byte[string.length + 1];
+        System.arraycopy(string, 0, ret, 0, string.length);
+        ret[string.length] = pix;
+        return ret;
+    }
+
+    /**
+     * Read a whole gif. Extensions other than the graphic control extension are skipped.
+     * @throws IllegalArgumentException If the gif is cut short
+     */
+    static Gif read(byte[] gif) {
+        final Reader in = new Reader(gif);
+        in.skip(6);// GIF89a
+        final Gif ret = new Gif();
+        ret.width = in.readShort();
+        ret.height = in.readShort();
+        final int screenFlags = in.readByte();
+        ret.backgroundIndex = in.readByte();
+        in.skip(1);
+        if((screenFlags & 0x80) != 0) {
+            ret.globalColors = in.readColors(2 << (screenFlags & 0x07));
+        }
+        Image control = new Image();// Graphic control of the next image
+        while(true) {
+            final int sentinel = in.readByte();
+            if(sentinel == 0x3b) {
+                return ret;
+            }
+            if(sentinel == 0x21) {
+                final int label = in.readByte();
+                if(label == 0xf9) {
+                    in.skip(1);
+                    final int flags = in.readByte();
+                    control.disposalMethod = (flags >> 2) & 0x07;
+                    control.delayMS = 10 * in.readShort();
+                    final int transparencyIndex = in.readByte();
+                    control.transparencyIndex = ((flags & 0x01) != 0) ? transparencyIndex : NO_TRANSPARENCY_INDEX;
+                }
+                in.readSubBlocks();
+                continue;
+            }
+            if(sentinel != 0x2c) {
+                throw new IllegalArgumentException("Unknown block " + sentinel);
+            }
+            final Image image = control;
+            control = new Image();
+            image.x = in.readShort();
+            image.y = in.readShort();
+            image.width = in.readShort();
+            image.height = in.readShort();
+            final int flags = in.readByte();
+            image.interlaced = (flags & 0x40) != 0;
+            if((flags & 0x80) != 0) {
+                image.localColors = in.readColors(2 << (flags & 0x07));
+            }
+            image.rootSize = in.readByte();
+            image.data = in.readSubBlocks();
+            final byte[] indices = decode(image.data, image.rootSize, image.width * image.height);
+            if(indices.length < image.width * image.height) {
+                throw new IllegalArgumentException("Image data cut short");
+            }
+            image.indices = image.interlaced ? deinterlace(indices, image.width, image.height) : indices;
+            ret.images.add(image);
+        }
+    }
+
+    /**
+     * Draw the images one after the other on a canvas that starts transparent, as GIF89a describes.
+     * RESTORE_TO_PREVIOUS puts back a copy of the whole canvas.
+     * RESTORE_BG_COLOR fills the image's rectangle with the background index of the image's color table,
+     * the color GifDecoder2 uses, transparent if that is the transparent index.
+     * @return Every frame in ARGB, transparent pixels are 0
+     */
+    static List<int[]> compose(Gif gif) {
+        final List<int[]> frames = new ArrayList<int[]>();
+        int[] canvas = new int[gif.width * gif.height];
+        for(Image image : gif.images) {
+            final int[] colors = argb((image.localColors != null) ? image.localColors : gif.globalColors, image.transparencyIndex);
+            final int[] before = canvas.clone();
+            for(int row = 0; row < image.height; ++row) {
+                for(int column = 0; column < image.width; ++column) {
+                    final int x = image.x + column;
+                    final int y = image.y + row;
+                    final int index = image.indices[row * image.width + column] & 0xff;
+                    if(x < gif.width && y < gif.height && index != image.transparencyIndex) {
+                        canvas[y * gif.width + x] = colors[index];
+                    }
+                }
+            }
+            frames.add(canvas.clone());
+
+            if(image.disposalMethod == RESTORE_BG_COLOR) {
+                for(int y = image.y; y < Math.min(image.y + image.height, gif.height); ++y) {
+                    for(int x = image.x; x < Math.min(image.x + image.width, gif.width); ++x) {
+                        canvas[y * gif.width + x] = colors[gif.backgroundIndex];
+                    }
+                }
+            }
+            else if(image.disposalMethod == RESTORE_TO_PREVIOUS) {
+                canvas = before;
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * @return 256 ARGB colors of a color table, opaque black past its end and 0 for the transparent index
+     */
+    private static int[] argb(int[] table, int transparencyIndex) {
+        final int[] ret = new int[256];
+        for(int i = 0; i < ret.length; ++i) {
+            ret[i] = 0xff000000 | ((table != null && i < table.length) ? table[i] : 0);
+        }
+        if(transparencyIndex != NO_TRANSPARENCY_INDEX) {
+            ret[transparencyIndex] = 0;
+        }
+        return ret;
+    }
+
+    /**
+     * @return Rows in the order an interlaced image stores them
+     */
+    static byte[] interlace(byte[] rows, int width, int height) {
+        final byte[] ret = new byte[rows.length];
+        int stored = 0;
+        for(int pass = 0; pass < 4; ++pass) {
+            for(int row = INTERLACE_START_ROWS[pass]; row < height; row += INTERLACE_STEP_ROWS[pass]) {
+                System.arraycopy(rows, row * width, ret, stored * width, width);
+                stored++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return Rows of an interlaced image from top to bottom
+     */
+    static byte[] deinterlace(byte[] stored, int width, int height) {
+        final byte[] ret = new byte[stored.length];
+        int storedRow = 0;
+        for(int pass = 0; pass < 4; ++pass) {
+            for(int row = INTERLACE_START_ROWS[pass]; row < height; row += INTERLACE_STEP_ROWS[pass]) {
+                System.arraycopy(stored, storedRow * width, ret, row * width, width);
+                storedRow++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Packs codes from the lowest bit, as gif image data does.
+     */
+    private static final class BitWriter {
+        private final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+        private int mBits;
+        private int mBitCount;
+
+        void write(int code, int codeSize) {
+            mBits |= code << mBitCount;
+            mBitCount += codeSize;
+            while(mBitCount >= 8) {
+                mOut.write(mBits);
+                mBits >>>= 8;
+                mBitCount -= 8;
+            }
+        }
+
+        byte[] toByteArray() {
+            if(mBitCount > 0) {
+                mOut.write(mBits);
+                mBits = 0;
+                mBitCount = 0;
+            }
+            return mOut.toByteArray();
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] mData;
+        private int mPosition;
+
+        Reader(byte[] data) {
+            mData = data;
+        }
+
+        int readByte() {
+            if(mPosition >= mData.length) {
+                throw new IllegalArgumentException("Gif cut short");
+            }
+            return mData[mPosition++] & 0xff;
+        }
+
+        int readShort() {
+            return readByte() | (readByte() << 8);
+        }
+
+        void skip(int count) {
+            mPosition += count;
+        }
+
+        int[] readColors(int count) {
+            final int[] ret = new int[count];
+            for(int i = 0; i < count; ++i) {
+                ret[i] = (readByte() << 16) | (readByte() << 8) | readByte();
+            }
+            return ret;
+        }
+
+        byte[] readSubBlocks() {
+            final ByteArrayOutputStream ret = new ByteArrayOutputStream();
+            int length;
+            while((length = readByte()) != 0) {
+                for(int i = 0; i < length; ++i) {
+                    ret.write(readByte());
+                }
+            }
+            return ret.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.kuoster.gifanimationdrawable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks GifDecoder2 against ReferenceGif, on generated gifs and on the gifs bundled with the library.
+ */
+public class ReferenceGifTest {
+    private static final String[] GIFS = { "/animation.gif", "/animation_interlaced.gif" };
+    private static final int[] COLOR_COUNTS = { 2, 4, 16, 256 };
+    private static final int[][] SIZES = { {1, 1}, {7, 3}, {160, 120} };
+    private static final int ANIMATIONS = 200;
+
+    private static byte[] readGif(String name) throws IOException {
+        final InputStream is = ReferenceGifTest.class.getResourceAsStream(name);
+        assertTrue("Missing test gif " + name, is != null);
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int n;
+            while((n = is.read(buffer)) != -1) {
+                bos.write(buffer, 0, n);
+            }
+            return bos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    private static int[] randomColors(Random random, int count) {
+        final int[] colors = new int[count];
+        for(int i = 0; i < count; ++i) {
+            colors[i] = random.nextInt(0x1000000);
+        }
+        return colors;
+    }
+
+    /**
+     * @param kind 0 for noise, 1 for runs of random length, 2 for repeating stripes, 3 for a single color,
+     * 4 for a stretch of noise repeated, so strings added to a full dictionary come back
+     */
+    private static byte[] pattern(Random random, int kind, int count, int colorCount) {
+        final byte[] indices = new byte[count];
+        int run = 0;
+        int color = 0;
+        for(int i = 0; i < count; ++i) {
+            switch (kind) {
+                case 0:
+                    color = random.nextInt(colorCount);
+                    break;
+                case 1:
+                    if(run-- == 0) {
+                        run = random.nextInt(40);
+                        color = random.nextInt(colorCount);
+                    }
+                    break;
+                case 2:
+                    color = (i / 5 + i / 97) % colorCount;
+                    break;
+                case 4:
+                    color = (i < 6000) ? random.nextInt(colorCount) : indices[i - 6000];
+                    break;
+                default:
+            }
+            indices[i] = (byte)color;
+        }
+        return indices;
+    }
+
+    private static int[] pixelsOf(GifFrameSink sink) {
+        final IntBuffer pixels = ((IntBufferFrameSink)sink).getPixels().duplicate();
+        final int[] argb = new int[pixels.remaining()];
+        pixels.get(argb);
+        return argb;
+    }
+
+    private static List<int[]> framesOf(GifDecoder2 dec) {
+        final List<int[]> frames = new ArrayList<int[]>();
+        for(int i = 0; i < dec.getFrameCount(); ++i) {
+            frames.add(pixelsOf(dec.getFrameSink(i)));
+        }
+        return frames;
+    }
+
+    /**
+     * A random animation with frames of every disposal method, transparent, interlaced, with local color tables
+     * and partly or wholly outside the canvas. Now and then a frame covers the canvas, so there are keyframes to seek from.
+     */
+    private static byte[] randomAnimation(Random random) {
+        final int width = 1 + random.nextInt(40);
+        final int height = 1 + random.nextInt(40);
+        final int colorCount = COLOR_COUNTS[random.nextInt(COLOR_COUNTS.length)];
+        final ReferenceGif.Writer writer = new ReferenceGif.Writer(width, height, randomColors(random, colorCount), random.nextInt(colorCount));
+        final int frameCount = 1 + random.nextInt(12);
+        for(int i = 0; i < frameCount; ++i) {
+            final ReferenceGif.Image image = new ReferenceGif.Image();
+            if(random.nextInt(3) == 0) {
+                image.width = width;
+                image.height = height;
+            }
+            else {
+                image.x = random.nextInt(width + 2);
+                image.y = random.nextInt(height + 2);
+                image.width = 1 + random.nextInt(width);
+                image.height = 1 + random.nextInt(height);
+            }
+            image.disposalMethod = random.nextInt(4);
+            image.interlaced = random.nextInt(4) == 0;
+            int imageColorCount = colorCount;
+            if(random.nextInt(4) == 0) {
+                imageColorCount = COLOR_COUNTS[random.nextInt(COLOR_COUNTS.length)];
+                image.localColors = randomColors(random, imageColorCount);
+            }
+            if(random.nextBoolean()) {
+                image.transparencyIndex = random.nextInt(imageColorCount);
+            }
+            image.indices = pattern(random, random.nextInt(4), image.width * image.height, imageColorCount);
+            image.delayMS = 10 * random.nextInt(10);
+            writer.add(image);
+        }
+        return writer.finish();
+    }
+
+    /**
+     * @return The pixels a decoder with this sample size keeps: those at multiples of sampleSize on the canvas
+     */
+    private static List<int[]> sampled(List<int[]> frames, int width, int height, int sampleSize) {
+        final int sampledWidth = GifDecoder2.sampledSize(width, sampleSize);
+        final int sampledHeight = GifDecoder2.sampledSize(height, sampleSize);
+        final List<int[]> ret = new ArrayList<int[]>();
+        for(int[] frame : frames) {
+            final int[] pixels = new int[sampledWidth * sampledHeight];
+            for(int y = 0; y < sampledHeight; ++y) {
+                for(int x = 0; x < sampledWidth; ++x) {
+                    pixels[y * sampledWidth + x] = frame[y * sampleSize * width + x * sampleSize];
+                }
+            }
+            ret.add(pixels);
+        }
+        return ret;
+    }
+
+    private static void assertSameFrames(String message, List<int[]> expected, List<int[]> actual) {
+        assertEquals(message + " frame count", expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); ++i) {
+            assertArrayEquals(message + " frame " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    /**
+     * The decoded indices of every image must be those of the textbook LZW decoder.
+     */
+    private static void assertSameIndices(String message, byte[] gif) {
+        final ReferenceGif.Gif reference = ReferenceGif.read(gif);
+        final GifDecoder2 dec = new GifDecoder2();
+        dec.setKeepIndexedFrames(true);
+        dec.load(gif);
+        assertEquals(message + " frame count", reference.images.size(), dec.getFrameCount());
+        for(int i = 0; i < reference.images.size(); ++i) {
+            final ReferenceGif.Image image = reference.images.get(i);
+            final GifDecoder2.IndexedFrame frame = dec.getIndexedFrame(i);
+            final byte[] indices = new byte[frame.indexCount];
+            System.arraycopy(frame.indices, 0, indices, 0, frame.indexCount);
+            // In the order of the data, interlaced or not
+            assertArrayEquals(message + " frame " + i, ReferenceGif.decode(image.data, image.rootSize, image.width * image.height), indices);
+        }
+    }
+
+    @Test
+    public void lzwMatchesTheTextbookDecoder() {
+        final Random random = new Random(7);
+        int gifs = 0;
+        for(int colorCount : COLOR_COUNTS) {
+            for(int[] size : SIZES) {
+                for(int kind = 0; kind < 5; ++kind) {
+                    final boolean deferredClear = (gifs & 1) != 0;
+                    final boolean interlaced = (gifs & 2) != 0;
+                    final boolean local = (gifs & 4) != 0;
+                    final String message = colorCount + " colors " + size[0] + "x" + size[1] + " pattern " + kind
+                            + (deferredClear ? " deferred clear" : "") + (interlaced ? " interlaced" : "") + (local ? " local colors" : "");
+                    gifs++;
+
+                    final int[] colors = randomColors(random, colorCount);
+                    final ReferenceGif.Image image = new ReferenceGif.Image();
+                    image.width = size[0];
+                    image.height = size[1];
+                    image.interlaced = interlaced;
+                    image.localColors = local ? colors : null;
+                    image.indices = pattern(random, kind, size[0] * size[1], colorCount);
+                    final byte[] gif = new ReferenceGif.Writer(size[0], size[1], local ? null : colors, 0)
+                            .setDeferredClear(deferredClear).add(image).finish();
+                    // The reference must read back what it wrote, or it isn't a reference
+                    assertArrayEquals(message + " reference", image.indices, ReferenceGif.read(gif).images.get(0).indices);
+
+                    assertSameIndices(message, gif);
+                    // A single opaque image covering the canvas is the frame, whichever way it is decoded
+                    final int[] expected = new int[image.indices.length];
+                    for(int i = 0; i < expected.length; ++i) {
+                        expected[i] = 0xff000000 | colors[image.indices[i] & 0xff];
+                    }
+                    final GifDecoder2 loaded = new GifDecoder2();
+                    loaded.load(gif);
+                    assertArrayEquals(message + " load", expected, pixelsOf(loaded.getFrameSink(0)));
+                    final GifDecoder2 fed = new GifDecoder2();
+                    fed.beginFeed();
+                    for(int i = 0; i < gif.length; i += 61) {// Cuts the data across codes and sub-blocks
+                        fed.feed(gif, i, Math.min(61, gif.length - i));
+                    }
+                    fed.endFeed();
+                    assertArrayEquals(message + " feed", expected, pixelsOf(fed.getFrameSink(0)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lzwOfTheBundledGifsMatchesTheTextbookDecoder() throws IOException {
+        for(String name : GIFS) {
+            assertSameIndices(name, readGif(name));
+        }
+    }
+
+    @Test
+    public void framesMatchTheReferenceCompositor() throws IOException {
+        final List<byte[]> gifs = new ArrayList<byte[]>();
+        for(String name : GIFS) {
+            gifs.add(readGif(name));
+        }
+        final Random random = new Random(18);
+        for(int i = 0; i < ANIMATIONS; ++i) {
+            gifs.add(randomAnimation(random));
+        }
+        for(int i = 0; i < gifs.size(); ++i) {
+            final byte[] gif = gifs.get(i);
+            final ReferenceGif.Gif reference = ReferenceGif.read(gif);
+            final List<int[]> expected = ReferenceGif.compose(reference);
+            for(int sampleSize = 1; sampleSize <= 3; ++sampleSize) {
+                final String message = "gif " + i + " sample size " + sampleSize;
+                final List<int[]> sampledExpected = sampled(expected, reference.width, reference.height, sampleSize);
+
+                final GifDecoder2 loaded = new GifDecoder2();
+                loaded.setSampleSize(sampleSize);
+                loaded.setPipelined(false);
+                loaded.load(gif);
+                assertSameFrames(message + " load", sampledExpected, framesOf(loaded));
+
+                final GifDecoder2 opened = new GifDecoder2();
+                opened.setSampleSize(sampleSize);
+                assertTrue(message + " open", opened.open(gif));
+                final List<int[]> decoded = new ArrayList<int[]>();
+                while(true) {
+                    final int[] argb = new int[opened.getWidth() * opened.getHeight()];
+                    if(!opened.decodeNextFrame(new IntBufferFrameSink(argb, opened.getWidth()))) {
+                        break;
+                    }
+                    decoded.add(argb);
+                }
+                opened.close();
+                assertSameFrames(message + " open", sampledExpected, decoded);
+
+                final GifDecoder2 fed = new GifDecoder2();
+                fed.setSampleSize(sampleSize);
+                fed.beginFeed();
+                for(int position = 0; position < gif.length; ) {
+                    final int length = Math.min(1 + random.nextInt(100), gif.length - position);
+                    fed.feed(gif, position, length);
+                    position += length;
+                }
+                fed.endFeed();
+                assertSameFrames(message + " feed", sampledExpected, framesOf(fed));
+            }
+        }
+    }
+
+    @Test
+    public void pipelinedLoadsMatchTheReferenceCompositor() throws Exception {
+        final List<byte[]> gifs = new ArrayList<byte[]>();
+        for(String name : GIFS) {
+            gifs.add(readGif(name));
+        }
+        final Random random = new Random(17);
+        for(int i = 0; i < ANIMATIONS; ++i) {
+            gifs.add(randomAnimation(random));
+        }
+        final List<List<int[]>> expected = new ArrayList<List<int[]>>();
+        for(byte[] gif : gifs) {
+            expected.add(ReferenceGif.compose(ReferenceGif.read(gif)));
+        }
+        // Loads at once, more than there are parser threads, so some run without the pipeline
+        final Thread[] threads = new Thread[4];
+        final Throwable[] errors = new Throwable[threads.length];
+        for(int t = 0; t < threads.length; ++t) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for(int i = 0; i < gifs.size(); ++i) {
+                            final GifDecoder2 dec = new GifDecoder2();
+                            dec.setPipelined(true);
+                            dec.load(gifs.get(i));
+                            assertSameFrames("thread " + thread + " gif " + i, expected.get(i), framesOf(dec));
+                        }
+                    } catch(Throwable e) {
+                        errors[thread] = e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for(int t = 0; t < threads.length; ++t) {
+            threads[t].join();
+            if(errors[t] instanceof Error) {
+                throw (Error)errors[t];
+            }
+            if(errors[t] != null) {
+                throw new RuntimeException(errors[t]);
+            }
+        }
+    }
+
+    @Test
+    public void seekToMatchesTheReferenceCompositor() throws IOException {
+        final Random random = new Random(1018);
+        int keyframes = 0;
+        int keyframesOnBackground = 0;
+        for(int i = 0; i < ANIMATIONS; ++i) {
+            final byte[] gif = (i < GIFS.length) ? readGif(GIFS[i]) : randomAnimation(random);
+            final ReferenceGif.Gif reference = ReferenceGif.read(gif);
+            final List<int[]> expected = ReferenceGif.compose(reference);
+            final GifDecoder2 dec = new GifDecoder2();
+            assertTrue(dec.open(gif));
+            final GifFrameIndex index = dec.getFrameIndex();
+            for(int frame = 1; frame < index.getFrameCount(); ++frame) {
+                if(index.frames[frame].keyframe) {
+                    keyframes++;
+                    if(index.frames[frame].canvasColor != 0) {
+                        keyframesOnBackground++;
+                    }
+                }
+            }
+            // In a random order, so seeks go forwards and backwards, from keyframes and from the frame before
+            final List<Integer> order = new ArrayList<Integer>();
+            for(int frame = 0; frame < expected.size(); ++frame) {
+                order.add(frame);
+                order.add(frame);
+            }
+            Collections.shuffle(order, random);
+            final int[] argb = new int[dec.getWidth() * dec.getHeight()];
+            final GifFrameSink sink = new IntBufferFrameSink(argb, dec.getWidth());
+            for(int frame : order) {
+                final String message = "gif " + i + " seek " + frame;
+                assertTrue(message, dec.seekTo(frame, sink));
+                assertArrayEquals(message, expected.get(frame), argb);
+                if(frame + 1 < expected.size() && random.nextBoolean()) {
+                    assertTrue(message + " next", dec.decodeNextFrame(sink));
+                    assertArrayEquals(message + " next", expected.get(frame + 1), argb);
+                }
+            }
+            dec.close();
+        }
+        // Otherwise every seek started at the first frame
+        assertTrue("keyframes after the first frame " + keyframes, keyframes > 0);
+        assertTrue("keyframes after a frame restored to the background " + keyframesOnBackground, keyframesOnBackground > 0);
+    }
+}